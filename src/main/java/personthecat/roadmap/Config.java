@@ -2,6 +2,8 @@ package personthecat.roadmap;
 
 import personthecat.fastnoise.data.NoiseType;
 import personthecat.roadmap.data.BackgroundColor;
+import personthecat.roadmap.data.OpenListType;
+import personthecat.roadmap.data.SmoothnessType;
 import personthecat.roadmap.data.Tracker;
 import personthecat.roadmap.gen.road.Road;
 import xjs.comments.CommentType;
@@ -39,8 +41,12 @@ public class Config {
   private int maxRoadLength = Road.MAX_DISTANCE;
   private int shorelineCutoff = 20;
   private int mountainCutoff = 40;
+  private float suitableWeight = 0.0F;
   private int maxBranches = 15;
   private int pregenThreadCount = 4;
+  private int mapThreadCount = 4;
+  private int quadThreadCount = 4;
+  private boolean speculativeBranches = false;
   private int pregenRadius = 15;
   private float frequency = 0.00125F;
   private float grooveFrequency = 0.02F;
@@ -49,20 +55,42 @@ public class Config {
   private float zoom = 1.25F;
   private float roadChance = 1.0F / 4000.0F;
   private float pregenSkew = 0.25F;
+  private float bucketWidth = 0.5F;
+  private float strideSmoothness = 0.5F;
   private boolean sideView = false;
   private boolean mountains = true;
   private boolean enableRoads = true;
   private boolean persistRoads = true;
+  private boolean persistHeightmap = false;
   private boolean generatePartial = true;
   private boolean pregenRoads = false;
   private boolean debugPregenShape = true;
   private boolean highlightRoadEndpoints = false;
+  private boolean bidirectionalSearch = false;
+  private boolean logSearchStats = false;
+  private boolean hierarchicalSearch = false;
+  private int maxSearchStride = Road.STEP;
+  private boolean cacheTraversalCosts = true;
+  private int costCacheSize = 2048;
+  private float searchWeight = 1.0F;
+  private boolean anytimeSearch = false;
+  private int searchTimeLimit = 0;
+  private int sampleCacheSize = 8192;
+  private int smoothnessCacheSize = 16384;
+  private SmoothnessType smoothnessType = SmoothnessType.LATTICE;
+  private int smoothnessRadius = 1;
+  private int mapLod = 0;
+  private boolean progressiveRender = false;
+  private int coarseLod = 0;
+  private float maxLodError = 8.0F;
   private NoiseType mapType = NoiseType.SIMPLEX;
   private NoiseType grooveType = NoiseType.CUBIC;
+  private OpenListType openListType = OpenListType.HEAP;
   private Color backgroundColor = Color.BLACK;
   private boolean hasErrors = false;
   private boolean missingFields = false;
   private boolean terrainFeaturesUpdated;
+  private boolean roadFeaturesUpdated;
 
   public Config(final File file) {
     this.file = file;
@@ -133,6 +161,10 @@ public class Config {
     return this.mountainCutoff;
   }
 
+  public float getSuitableWeight() {
+    return this.suitableWeight;
+  }
+
   public int getMaxBranches() {
     return this.maxBranches;
   }
@@ -141,6 +173,18 @@ public class Config {
     return this.pregenThreadCount;
   }
 
+  public int getMapThreadCount() {
+    return this.mapThreadCount;
+  }
+
+  public int getQuadThreadCount() {
+    return this.quadThreadCount;
+  }
+
+  public boolean isSpeculativeBranches() {
+    return this.speculativeBranches;
+  }
+
   public int getPregenRadius() {
     return this.pregenRadius;
   }
@@ -173,6 +217,10 @@ public class Config {
     return this.pregenSkew;
   }
 
+  public float getBucketWidth() {
+    return this.bucketWidth;
+  }
+
   public boolean isSideView() {
     return this.sideView;
   }
@@ -189,6 +237,10 @@ public class Config {
     return this.persistRoads;
   }
 
+  public boolean isPersistHeightmap() {
+    return this.persistHeightmap;
+  }
+
   public boolean isGeneratePartial() {
     return this.generatePartial;
   }
@@ -205,6 +257,83 @@ public class Config {
     return this.highlightRoadEndpoints;
   }
 
+  public boolean isLogSearchStats() {
+    return this.logSearchStats;
+  }
+
+  public boolean isBidirectionalSearch() {
+    return this.bidirectionalSearch;
+  }
+
+  public boolean isHierarchicalSearch() {
+    return this.hierarchicalSearch;
+  }
+
+  public int getMaxSearchStride() {
+    return this.maxSearchStride;
+  }
+
+  public float getStrideSmoothness() {
+    return this.strideSmoothness;
+  }
+
+  public boolean isCacheTraversalCosts() {
+    return this.cacheTraversalCosts;
+  }
+
+  public int getCostCacheSize() {
+    return this.costCacheSize;
+  }
+
+  public int getSampleCacheSize() {
+    return this.sampleCacheSize;
+  }
+
+  public int getSmoothnessCacheSize() {
+    return this.smoothnessCacheSize;
+  }
+
+  public SmoothnessType getSmoothnessType() {
+    return this.smoothnessType;
+  }
+
+  public int getSmoothnessRadius() {
+    return this.smoothnessRadius;
+  }
+
+  public int getMapLod() {
+    return this.mapLod;
+  }
+
+  public boolean isProgressiveRender() {
+    return this.progressiveRender;
+  }
+
+  public int getCoarseLod() {
+    return this.coarseLod;
+  }
+
+  public float getMaxLodError() {
+    return this.maxLodError;
+  }
+
+  public float getSearchWeight() {
+    return this.searchWeight;
+  }
+
+  public boolean isAnytimeSearch() {
+    return this.anytimeSearch;
+  }
+
+  public int getSearchTimeLimit() {
+    return this.searchTimeLimit;
+  }
+
+  // Timed searches depend on how fast the machine is, so the roads they find are never the same twice.
+  public boolean isSearchTimed() {
+    return this.anytimeSearch && this.searchTimeLimit > 0;
+  }
+
   public NoiseType getMapType() {
     return this.mapType;
   }
@@ -213,6 +342,10 @@ public class Config {
     return this.grooveType;
   }
 
+  public OpenListType getOpenListType() {
+    return this.openListType;
+  }
+
   public Color getBackgroundColor() {
     return this.backgroundColor;
   }
@@ -245,6 +378,7 @@ public class Config {
 
   private void deserialize(final JsonObject json) {
     this.terrainFeaturesUpdated = false;
+    this.roadFeaturesUpdated = false;
     this.getInt(json, "chunkHeight")
         .filter(i -> i >= 8 && i <= 64)
         .error("Must be 8 ~ 64")
@@ -314,6 +448,12 @@ public class Config {
         .error("Must be in height bounds")
         .get(() -> this.mountainCutoff)
         .set(i -> this.mountainCutoff = i);
+    this.getFloat(json, "suitableWeight")
+        .changesRoads()
+        .filter(f -> f >= 0)
+        .error("Must be >= 0")
+        .get(() -> this.suitableWeight)
+        .set(f -> this.suitableWeight = f);
     this.getInt(json, "maxBranches")
         .changesTerrainFeatures()
         .filter(i -> i >= 0 && i <= 64)
@@ -324,6 +464,15 @@ public class Config {
         .filter(i -> i > 0 && i <= 8)
         .error("Must be 1 ~ 8")
         .set(i -> this.pregenThreadCount = i);
+    this.getInt(json, "mapThreadCount")
+        .filter(i -> i > 0 && i <= 64)
+        .error("Must be 1 ~ 64")
+        .set(i -> this.mapThreadCount = i);
+    this.getInt(json, "quadThreadCount")
+        .filter(i -> i > 0 && i <= 16)
+        .error("Must be 1 ~ 16")
+        .set(i -> this.quadThreadCount = i);
+    this.getBoolean(json, "speculativeBranches").set(b -> this.speculativeBranches = b);
     this.getInt(json, "pregenRadius")
         .filter(i -> i > 0 && i < 128)
         .error("Must be 1 ~ 128")
@@ -364,6 +513,12 @@ public class Config {
         .filter(f -> f >= 0 && f <= 1)
         .error("Must be 0 - 1")
         .set(f -> this.pregenSkew = f);
+    this.getFloat(json, "bucketWidth")
+        .changesRoads()
+        .filter(f -> f > 0)
+        .error("Must be > 0")
+        .get(() -> this.bucketWidth)
+        .set(f -> this.bucketWidth = f);
     this.getBoolean(json, "mountains")
         .changesTerrainFeatures()
         .get(() -> this.mountains)
@@ -371,10 +526,86 @@ public class Config {
     this.getBoolean(json, "sideView").set(b -> this.sideView = b);
     this.getBoolean(json, "enableRoads").set(b -> this.enableRoads = b);
     this.getBoolean(json, "persistRoads").set(b -> this.persistRoads = b);
+    this.getBoolean(json, "persistHeightmap").set(b -> this.persistHeightmap = b);
     this.getBoolean(json, "generatePartial").set(b -> this.generatePartial = b);
     this.getBoolean(json, "pregenRoads").set(b -> this.pregenRoads = b);
     this.getBoolean(json, "debugPregenShape").set(b -> this.debugPregenShape = b);
     this.getBoolean(json, "highlightRoadEndpoints").set(b -> this.highlightRoadEndpoints = b);
+    this.getBoolean(json, "logSearchStats").set(b -> this.logSearchStats = b);
+    this.getBoolean(json, "bidirectionalSearch")
+        .changesRoads()
+        .get(() -> this.bidirectionalSearch)
+        .set(b -> this.bidirectionalSearch = b);
+    this.getBoolean(json, "hierarchicalSearch")
+        .changesRoads()
+        .get(() -> this.hierarchicalSearch)
+        .set(b -> this.hierarchicalSearch = b);
+    this.getInt(json, "maxSearchStride")
+        .changesRoads()
+        .filter(i -> i >= Road.STEP && i <= 16 && i % Road.STEP == 0)
+        .error("Must be 2 ~ 16 && even")
+        .get(() -> this.maxSearchStride)
+        .set(i -> this.maxSearchStride = i);
+    this.getFloat(json, "strideSmoothness")
+        .changesRoads()
+        .filter(f -> f >= 0)
+        .error("Must be >= 0")
+        .get(() -> this.strideSmoothness)
+        .set(f -> this.strideSmoothness = f);
+    this.getBoolean(json, "cacheTraversalCosts")
+        .get(() -> this.cacheTraversalCosts)
+        .set(b -> this.cacheTraversalCosts = b);
+    this.getInt(json, "costCacheSize")
+        .filter(i -> i > 0)
+        .error("Must be > 0")
+        .set(i -> this.costCacheSize = i);
+    this.getFloat(json, "searchWeight")
+        .changesRoads()
+        .filter(f -> f >= 1)
+        .error("Must be >= 1")
+        .get(() -> this.searchWeight)
+        .set(f -> this.searchWeight = f);
+    this.getBoolean(json, "anytimeSearch")
+        .changesRoads()
+        .get(() -> this.anytimeSearch)
+        .set(b -> this.anytimeSearch = b);
+    this.getInt(json, "searchTimeLimit")
+        .changesRoads()
+        .filter(i -> i >= 0)
+        .error("Must be >= 0")
+        .get(() -> this.searchTimeLimit)
+        .set(i -> this.searchTimeLimit = i);
+    this.getInt(json, "sampleCacheSize")
+        .filter(i -> i >= 0)
+        .error("Must be >= 0")
+        .set(i -> this.sampleCacheSize = i);
+    this.getInt(json, "smoothnessCacheSize")
+        .filter(i -> i > 0)
+        .error("Must be > 0")
+        .set(i -> this.smoothnessCacheSize = i);
+    this.getInt(json, "smoothnessRadius")
+        .changesTerrainFeatures()
+        .filter(i -> i >= 1 && i <= 8)
+        .error("Must be 1 ~ 8")
+        .get(() -> this.smoothnessRadius)
+        .set(i -> this.smoothnessRadius = i);
+    this.getInt(json, "mapLod")
+        .filter(i -> i >= 0 && i <= 3)
+        .error("Must be 0 ~ 3")
+        .set(i -> this.mapLod = i);
+    this.getBoolean(json, "progressiveRender").set(b -> this.progressiveRender = b);
+    this.getInt(json, "coarseLod")
+        .changesTerrainFeatures()
+        .filter(i -> i >= 0 && i <= 3)
+        .error("Must be 0 ~ 3")
+        .get(() -> this.coarseLod)
+        .set(i -> this.coarseLod = i);
+    this.getFloat(json, "maxLodError")
+        .changesTerrainFeatures()
+        .filter(f -> f >= 0)
+        .error("Must be >= 0")
+        .get(() -> this.maxLodError)
+        .set(f -> this.maxLodError = f);
     this.getEnum(json, "mapType", NoiseType.class, NoiseType::from)
         .changesTerrainFeatures()
         .get(() -> this.mapType)
@@ -383,6 +614,14 @@ public class Config {
         .changesTerrainFeatures()
         .get(() -> this.grooveType)
         .set(e -> this.grooveType = e);
+    this.getEnum(json, "openListType", OpenListType.class, OpenListType::from)
+        .changesRoads()
+        .get(() -> this.openListType)
+        .set(e -> this.openListType = e);
+    this.getEnum(json, "smoothnessType", SmoothnessType.class, SmoothnessType::from)
+        .changesTerrainFeatures()
+        .get(() -> this.smoothnessType)
+        .set(e -> this.smoothnessType = e);
     this.getEnum(json, "backgroundColor", BackgroundColor.class, BackgroundColor::from)
         .set(c -> this.backgroundColor = c.get());
   }
@@ -415,6 +654,11 @@ public class Config {
     return this.terrainFeaturesUpdated;
   }
 
+  // only the way roads are searched for changed, so the roads are deleted but the terrain and its caches are kept
+  public boolean roadFeaturesUpdated() {
+    return this.roadFeaturesUpdated;
+  }
+
   public void saveIfUpdated(final Tracker tracker) {
     if (this.seed != tracker.getSeed()
         || this.xOffset != tracker.getXOffset()
@@ -462,8 +706,12 @@ public class Config {
         .add("maxRoadLength", this.maxRoadLength, "The maximum length any road can be.")
         .add("shorelineCutoff", this.shorelineCutoff, "The minimum height at which to avoid shorelines.")
         .add("mountainCutoff", this.mountainCutoff, "The minimum height at which to avoid mountains.")
+        .add("suitableWeight", this.suitableWeight, "Road endpoints settle for the closest spot weighing less than this, or 0 to find the best.")
         .add("maxBranches", this.maxBranches, "The max number of road branches at any level.")
         .add("pregenThreadCount", this.pregenThreadCount, "The number of threads on which the pre-generator can run.")
+        .add("mapThreadCount", this.mapThreadCount, "The number of threads on which the heightmap can be generated.")
+        .add("quadThreadCount", this.quadThreadCount, "The number of threads on which the quads and branches of a road region can be generated.")
+        .add("speculativeBranches", this.speculativeBranches, "Whether to trace the branches of each network in parallel, redoing any that overlap.")
         .add("pregenRadius", this.pregenRadius, "The radius of road regions to pre-generate (d = r * 2 + 1)")
         .add("frequency", this.frequency, "Noise frequency for the main noise map.")
         .add("grooveFrequency", this.grooveFrequency, "Frequency for the groove noise.")
@@ -472,16 +720,37 @@ public class Config {
         .add("zoom", this.zoom, "The zoom ratio in side view mode, e.g. > 1 to zoom in, < 1 to zoom out.")
         .add("roadChance", this.roadChance, "The chance of a road origin spawning in any given chunk.")
         .add("pregenSkew", this.pregenSkew, "An optimization which controls the ratio of regions pre-generated diagonally.")
+        .add("bucketWidth", this.bucketWidth, "The range of path costs sharing a bucket when openListType is BUCKET.")
         .add("mountains", this.mountains, "Whether to enable mountainous terrain scaling.")
         .add("sideView", this.sideView, "Whether to display the terrain in side view mode.")
         .add("enableRoads", this.enableRoads, "Whether to generate and display roads on the map.")
         .add("persistRoads", this.persistRoads, "Whether to save roads to the disk as they generate.")
+        .add("persistHeightmap", this.persistHeightmap, "Whether to save noise samples to the disk to skip generating them again. Only the most recent terrains are kept.")
         .add("generatePartial", this.generatePartial, "Whether to persist road data into un-generated regions to avoid redundancy.")
         .add("pregenRoads", this.pregenRoads, "Whether to pre-generate road regions surrounding the current offset on startup.")
         .add("debugPregenShape", this.debugPregenShape, "Whether to log a debug image of the shape of the regions generated.")
         .add("highlightRoadEndpoints", this.highlightRoadEndpoints, "Debug option to clearly show where road endpoints are.")
+        .add("logSearchStats", this.logSearchStats, "Debug option to print pathfinding statistics per region.")
+        .add("bidirectionalSearch", this.bidirectionalSearch, "Whether to trace main roads from both ends at once.")
+        .add("hierarchicalSearch", this.hierarchicalSearch, "Whether to plan main roads over a coarse graph before tracing them.")
+        .add("maxSearchStride", this.maxSearchStride, "The longest step roads may take over gentle terrain while searching.")
+        .add("strideSmoothness", this.strideSmoothness, "The maximum terrain SD at which roads may take long steps.")
+        .add("cacheTraversalCosts", this.cacheTraversalCosts, "Whether to reuse the static terrain costs of cells between searches.")
+        .add("costCacheSize", this.costCacheSize, "The number of 64x64 block cost tiles kept in memory per road generator.")
+        .add("searchWeight", this.searchWeight, "How heavily to weigh the distance to the destination. Higher is faster, but less optimal.")
+        .add("anytimeSearch", this.anytimeSearch, "Whether main roads may end at their closest approach when the search runs out of budget.")
+        .add("searchTimeLimit", this.searchTimeLimit, "The maximum milliseconds an anytime search may run, or 0 for no limit. Roads found with a limit depend on timing, so they are never persisted.")
+        .add("sampleCacheSize", this.sampleCacheSize, "The number of 16x16 block noise tiles kept in memory off screen, or 0 to disable.")
+        .add("smoothnessCacheSize", this.smoothnessCacheSize, "The number of 16x16 block chunks of smoothness and road suitability shared between road generators.")
+        .add("smoothnessType", this.smoothnessType.name(), "How road generators measure smoothness: LATTICE or INTEGRAL (any window size at the same cost).")
+        .add("smoothnessRadius", this.smoothnessRadius, "The SD window radius in 4 block steps when smoothnessType is INTEGRAL, 1 ~ 8.")
+        .add("mapLod", this.mapLod, "Draws the map from noise sampled every 2^n blocks, 0 ~ 3.")
+        .add("progressiveRender", this.progressiveRender, "Whether to show a rough map right away when the terrain changes, then refine it.")
+        .add("coarseLod", this.coarseLod, "Scans for road endpoints and coarse paths using noise sampled every 2^n blocks, 0 ~ 3.")
+        .add("maxLodError", this.maxLodError, "The largest height difference across a sparse sample before falling back to exact noise.")
         .add("mapType", this.mapType.format(), "The type of noise to generate for the primary map.")
         .add("grooveType", this.grooveType.format(), "The type of noise to generate for the grooves.")
+        .add("openListType", this.openListType.name(), "The queue used by the road pathfinder: HEAP or BUCKET (faster, less exact).")
         .add("backgroundColor", BackgroundColor.format(this.backgroundColor), "The color to display as the background in side view mode.");
   }
 
@@ -503,6 +772,7 @@ public class Config {
     private Supplier<T> getter;
     private String message = "Unexpected error occurred";
     private boolean changesTerrainFeatures;
+    private boolean changesRoads;
 
     ConfigValue(final JsonObject json, final String key, final Function<JsonValue, T> mapper) {
       this.json = json;
@@ -525,6 +795,11 @@ public class Config {
       return this;
     }
 
+    ConfigValue<T> changesRoads() {
+      this.changesRoads = true;
+      return this;
+    }
+
     ConfigValue<T> get(final Supplier<T> getter) {
       this.getter = getter;
       return this;
@@ -539,11 +814,15 @@ public class Config {
           this.json.getOptional(this.key, wrap(this.mapper, this.filter, this.message));
       if (value.isEmpty()) {
         Config.this.hasErrors = true;
-      } else if (this.changesTerrainFeatures) {
+      } else if (this.changesTerrainFeatures || this.changesRoads) {
         Objects.requireNonNull(this.getter, "getter");
         final T current = this.getter.get();
         if (!value.get().equals(current)) {
-          Config.this.terrainFeaturesUpdated = true;
+          if (this.changesTerrainFeatures) {
+            Config.this.terrainFeaturesUpdated = true;
+          } else {
+            Config.this.roadFeaturesUpdated = true;
+          }
         }
       }
       value.ifPresent(c);
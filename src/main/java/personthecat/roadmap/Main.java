@@ -3,14 +3,20 @@ package personthecat.roadmap;
 import personthecat.roadmap.data.Tracker;
 import personthecat.roadmap.gen.road.RoadNetwork;
 import personthecat.roadmap.gen.road.RoadRegion;
+import personthecat.roadmap.gen.Heightmap;
 import personthecat.roadmap.gen.TerrainGenerator;
 import xjs.serialization.JsonContext;
 import xjs.serialization.writer.JsonWriterOptions;
 
+import javax.swing.SwingUtilities;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 public class Main {
 
@@ -21,6 +27,8 @@ public class Main {
   }
 
   private static class RoadMapTest {
+    static final ExecutorService REFINER = Executors.newSingleThreadExecutor();
+    final AtomicInteger pass = new AtomicInteger();
     final Config config = new Config(new File("config.xjs"));
     final Tracker tracker = new Tracker(this.config);
     final Random rand = new Random();
@@ -34,7 +42,7 @@ public class Main {
       if (this.config.isPregenRoads()) {
         final short x = RoadRegion.absToRegion(this.tracker.getXOffset());
         final short y = RoadRegion.absToRegion(this.tracker.getYOffset());
-        this.generator.getRoadMap().pregen(this.generator.getMapGenerator(), x, y);
+        this.generator.getRoadMap().pregen(this.generator.getMapGenerator().getView(), x, y);
       }
       window.onKeyPressed(KeyEvent.VK_SPACE, w -> {
         this.generator.next(this.rand);
@@ -119,14 +127,51 @@ public class Main {
     }
 
     BufferedImage createNextImage(final boolean reload) {
+      final int pass = this.pass.incrementAndGet(); // anything still refining is out of date
       if (reload) {
         this.generator.reload();
       }
-      final BufferedImage image = this.generator.generate(reload);
+      final BufferedImage image;
+      if (reload && this.window != null && this.config.isProgressiveRender()) {
+        // the old image stays up until the preview is published
+        this.generator.beginPreview();
+        this.renderInBackground(pass);
+        image = this.generator.getBuffer();
+      } else {
+        image = this.generator.generate(reload);
+      }
       this.tracker.reset();
       return image;
     }
 
+    // Everything is drawn on the refiner into new images, so the EDT only ever has to display them.
+    void renderInBackground(final int pass) {
+      final BooleanSupplier stale = () -> this.pass.get() != pass;
+      final int xOffset = this.tracker.getXOffset();
+      final int yOffset = this.tracker.getYOffset();
+      final int target = this.config.getMapLod();
+      REFINER.submit(() -> {
+        this.publish(this.generator.generatePreview(stale), stale);
+        for (int lod = Math.max(target, 1); lod >= target; lod--) {
+          final Heightmap map = this.generator.refine(xOffset, yOffset, lod, stale);
+          if (map == null) {
+            return;
+          }
+          this.publish(this.generator.install(map, lod == target, stale), stale);
+        }
+      });
+    }
+
+    void publish(final BufferedImage image, final BooleanSupplier stale) {
+      if (image != null) {
+        SwingUtilities.invokeLater(() -> {
+          if (!stale.getAsBoolean()) {
+            this.window.render(image);
+          }
+        });
+      }
+    }
+
     void reloadConfig() {
       final int oH = this.config.getChunkHeight();
       final int oW = this.config.getChunkWidth();
@@ -142,9 +187,11 @@ public class Main {
       this.config.reloadFromDisk();
       if (config.terrainFeaturesUpdated()) {
         System.out.println("Terrain features updated. Deleting old roads...");
-        RoadRegion.deleteAllRegions();
-        RoadNetwork.deleteAllNetworks();
-        this.generator.getRoadMap().clearCache();
+        this.generator.getMapGenerator().invalidate();
+        this.deleteRoads();
+      } else if (config.roadFeaturesUpdated()) {
+        System.out.println("Road settings updated. Deleting old roads...");
+        this.deleteRoads();
       }
       if (oH != this.config.getChunkHeight() || oW != this.config.getChunkWidth()) {
         if (this.window != null) {
@@ -179,5 +226,11 @@ public class Main {
         this.tracker.setGrooveFrequency(this.config.getGrooveFrequency());
       }
     }
+
+    void deleteRoads() {
+      RoadRegion.deleteAllRegions();
+      RoadNetwork.deleteAllNetworks();
+      this.generator.getRoadMap().clearCache();
+    }
   }
 }
@@ -0,0 +1,152 @@
+package personthecat.roadmap.data;
+
+import java.util.Arrays;
+
+public class BucketQueue implements OpenList {
+  private static final int MAX_BUCKETS = 1 << 16;
+  private static final int INITIAL_BUCKETS = 1 << 10;
+  private static final int INITIAL_SIZE = 256;
+
+  private final float width;
+  private int[] heads;
+  private int[] slots;
+  private int[] ids;
+  private int[] next;
+  private int[] previous;
+  private int[] buckets;
+  private int used;
+  private int size;
+  private int lo = Integer.MAX_VALUE;
+
+  public BucketQueue(final int capacity, final float width) {
+    this.width = width;
+    this.heads = new int[INITIAL_BUCKETS];
+    this.slots = new int[capacity];
+    this.ids = new int[INITIAL_SIZE];
+    this.next = new int[INITIAL_SIZE];
+    this.previous = new int[INITIAL_SIZE];
+    this.buckets = new int[INITIAL_SIZE];
+    Arrays.fill(this.heads, -1);
+    Arrays.fill(this.slots, -1);
+  }
+
+  @Override
+  public void offer(final int id, final float priority) {
+    this.ensureCapacity(id + 1);
+    final int b = this.bucketOf(priority);
+    int s = this.slots[id];
+    if (s < 0) {
+      s = this.allocate(id);
+      this.size++;
+    } else if (this.buckets[s] == b) {
+      return;
+    } else {
+      this.unlink(s);
+    }
+    this.link(s, b);
+  }
+
+  @Override
+  public int poll() {
+    while (this.heads[this.lo] < 0) {
+      this.lo++;
+    }
+    final int s = this.heads[this.lo];
+    final int id = this.ids[s];
+    this.unlink(s);
+    this.slots[id] = -1;
+    this.size--;
+    return id;
+  }
+
+  @Override
+  public boolean contains(final int id) {
+    return id < this.slots.length && this.slots[id] >= 0;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public void clear() {
+    // slots are never reused within a search, so every one handed out is visited once
+    for (int s = 0; s < this.used; s++) {
+      final int id = this.ids[s];
+      if (this.slots[id] == s) {
+        this.heads[this.buckets[s]] = -1;
+        this.slots[id] = -1;
+      }
+    }
+    this.used = 0;
+    this.size = 0;
+    this.lo = Integer.MAX_VALUE;
+  }
+
+  private int bucketOf(final float priority) {
+    if (priority <= 0) {
+      return 0;
+    }
+    // anything past the last bucket is treated as equally bad
+    return (int) Math.min(priority / this.width, MAX_BUCKETS - 1);
+  }
+
+  private int allocate(final int id) {
+    if (this.used == this.ids.length) {
+      final int len = this.used * 2;
+      this.ids = Arrays.copyOf(this.ids, len);
+      this.next = Arrays.copyOf(this.next, len);
+      this.previous = Arrays.copyOf(this.previous, len);
+      this.buckets = Arrays.copyOf(this.buckets, len);
+    }
+    final int s = this.used++;
+    this.ids[s] = id;
+    this.slots[id] = s;
+    return s;
+  }
+
+  private void link(final int s, final int b) {
+    if (b >= this.heads.length) {
+      final int old = this.heads.length;
+      this.heads = Arrays.copyOf(this.heads, Math.min(Math.max(b + 1, old * 2), MAX_BUCKETS));
+      Arrays.fill(this.heads, old, this.heads.length, -1);
+    }
+    final int head = this.heads[b];
+    this.next[s] = head;
+    this.previous[s] = -1;
+    if (head >= 0) {
+      this.previous[head] = s;
+    }
+    this.heads[b] = s;
+    this.buckets[s] = b;
+    if (b < this.lo) this.lo = b;
+  }
+
+  private void unlink(final int s) {
+    final int n = this.next[s];
+    final int p = this.previous[s];
+    if (p >= 0) {
+      this.next[p] = n;
+    } else {
+      this.heads[this.buckets[s]] = n;
+    }
+    if (n >= 0) {
+      this.previous[n] = p;
+    }
+  }
+
+  private void ensureCapacity(final int ids) {
+    if (ids > this.slots.length) {
+      final int len = Math.max(ids, this.slots.length * 2);
+      final int old = this.slots.length;
+      this.slots = Arrays.copyOf(this.slots, len);
+      Arrays.fill(this.slots, old, len, -1);
+    }
+  }
+}
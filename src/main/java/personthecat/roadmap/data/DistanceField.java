@@ -0,0 +1,175 @@
+package personthecat.roadmap.data;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import personthecat.roadmap.util.Utils;
+
+import java.util.Arrays;
+
+// The vertices of a graph rasterized into 4x4 block cells, so that finding the nearest one to any block only has to
+// look at a few. Each cell keeps every site that could be the nearest to some block inside of it: anything whose
+// closest approach to the cell is no farther than the best site's farthest approach. Lookups then measure each of
+// those exactly, so they agree with a full scan of the graph. A vertex plotted twice updates its one site in place.
+public class DistanceField {
+  private static final int SHIFT = 2;
+  private static final int CELL = 1 << SHIFT;
+  private static final int INITIAL_SITES = 1024;
+  private static final int INITIAL_CANDIDATES = 4;
+
+  private final int minX;
+  private final int minY;
+  private final int w;
+  private final int h;
+  private final int range;
+  private final float[] bounds;
+  private final int[][] candidates;
+  private final int[] counts;
+  private final Long2IntMap siteIds = new Long2IntOpenHashMap();
+  private int[] siteX = new int[INITIAL_SITES];
+  private int[] siteY = new int[INITIAL_SITES];
+  private byte[] siteRadius = new byte[INITIAL_SITES];
+  private byte[] siteLevel = new byte[INITIAL_SITES];
+  private int sites;
+
+  public DistanceField(final int minX, final int minY, final int maxX, final int maxY, final int range) {
+    this.minX = minX;
+    this.minY = minY;
+    this.w = ((maxX - minX) >> SHIFT) + 1;
+    this.h = ((maxY - minY) >> SHIFT) + 1;
+    this.range = range;
+    this.bounds = new float[this.w * this.h];
+    this.candidates = new int[this.w * this.h][];
+    this.counts = new int[this.w * this.h];
+    this.siteIds.defaultReturnValue(-1);
+    Arrays.fill(this.bounds, Float.MAX_VALUE);
+  }
+
+  public boolean contains(final int x, final int y) {
+    final int cX = (x - this.minX) >> SHIFT;
+    final int cY = (y - this.minY) >> SHIFT;
+    return cX >= 0 && cX < this.w && cY >= 0 && cY < this.h;
+  }
+
+  public void plot(final int x, final int y, final byte radius, final byte level) {
+    final int site = this.putSite(x, y, radius, level);
+    final int r = this.siteRadius[site];
+    // anything farther than range from the edge of the vertex never needs to see it
+    final int reach = this.range + r + CELL;
+    final int cX1 = Math.max(0, (x - reach - this.minX) >> SHIFT);
+    final int cY1 = Math.max(0, (y - reach - this.minY) >> SHIFT);
+    final int cX2 = Math.min(this.w - 1, (x + reach - this.minX) >> SHIFT);
+    final int cY2 = Math.min(this.h - 1, (y + reach - this.minY) >> SHIFT);
+    for (int cX = cX1; cX <= cX2; cX++) {
+      for (int cY = cY1; cY <= cY2; cY++) {
+        this.offer(cX, cY, site);
+      }
+    }
+  }
+
+  // The site nearest to x, y, earliest plotted if tied, or -1 if none is in range.
+  public int getNearest(final int x, final int y) {
+    final int i = this.indexOf((x - this.minX) >> SHIFT, (y - this.minY) >> SHIFT);
+    final int[] sites = this.candidates[i];
+    int nearest = -1;
+    double d = Double.MAX_VALUE;
+    for (int c = 0; c < this.counts[i]; c++) {
+      final int site = sites[c];
+      final double d1 = this.distance(site, x, y);
+      if (d1 < d) {
+        d = d1;
+        nearest = site;
+      }
+    }
+    return nearest;
+  }
+
+  public double distance(final int site, final int x, final int y) {
+    return Utils.distance(this.siteX[site], this.siteY[site], x, y) - this.siteRadius[site];
+  }
+
+  public byte getLevel(final int site) {
+    return this.siteLevel[site];
+  }
+
+  private int indexOf(final int cX, final int cY) {
+    return cX * this.h + cY;
+  }
+
+  private void offer(final int cX, final int cY, final int site) {
+    final int i = this.indexOf(cX, cY);
+    final int x0 = this.minX + (cX << SHIFT);
+    final int y0 = this.minY + (cY << SHIFT);
+    if (this.nearDistance(site, x0, y0) > this.bounds[i]) {
+      return;
+    }
+    final float far = this.farDistance(site, x0, y0);
+    int[] sites = this.candidates[i];
+    int count = this.counts[i];
+    if (far < this.bounds[i]) {
+      this.bounds[i] = far;
+      // drop anything that can no longer be the nearest to any block in the cell
+      int kept = 0;
+      for (int c = 0; c < count; c++) {
+        if (this.nearDistance(sites[c], x0, y0) <= far) {
+          sites[kept++] = sites[c];
+        }
+      }
+      count = kept;
+    }
+    if (sites == null) {
+      sites = this.candidates[i] = new int[INITIAL_CANDIDATES];
+    }
+    // sites are kept in the order they were added, and a site plotted again may already be here
+    int c = count - 1;
+    while (c >= 0 && sites[c] > site) {
+      c--;
+    }
+    if (c < 0 || sites[c] != site) {
+      if (count == sites.length) {
+        sites = this.candidates[i] = Arrays.copyOf(sites, count * 2);
+      }
+      System.arraycopy(sites, c + 1, sites, c + 2, count - c - 1);
+      sites[c + 1] = site;
+      count++;
+    }
+    this.counts[i] = count;
+  }
+
+  // the closest any block in the cell at x0, y0 can be to the edge of the site
+  private float nearDistance(final int site, final int x0, final int y0) {
+    final int dX = Math.max(0, Math.max(x0 - this.siteX[site], this.siteX[site] - (x0 + CELL - 1)));
+    final int dY = Math.max(0, Math.max(y0 - this.siteY[site], this.siteY[site] - (y0 + CELL - 1)));
+    return (float) Math.sqrt(dX * dX + dY * dY) - this.siteRadius[site];
+  }
+
+  // the farthest any block in the cell at x0, y0 can be from the edge of the site
+  private float farDistance(final int site, final int x0, final int y0) {
+    final int dX = Math.max(Math.abs(x0 - this.siteX[site]), Math.abs(x0 + CELL - 1 - this.siteX[site]));
+    final int dY = Math.max(Math.abs(y0 - this.siteY[site]), Math.abs(y0 + CELL - 1 - this.siteY[site]));
+    return (float) Math.sqrt(dX * dX + dY * dY) - this.siteRadius[site];
+  }
+
+  private int putSite(final int x, final int y, final byte radius, final byte level) {
+    final long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+    final int existing = this.siteIds.get(key);
+    if (existing >= 0) {
+      this.siteRadius[existing] = (byte) Math.max(this.siteRadius[existing], radius);
+      this.siteLevel[existing] = (byte) Math.max(this.siteLevel[existing], level);
+      return existing;
+    }
+    if (this.sites == this.siteX.length) {
+      final int len = this.sites * 2;
+      this.siteX = Arrays.copyOf(this.siteX, len);
+      this.siteY = Arrays.copyOf(this.siteY, len);
+      this.siteRadius = Arrays.copyOf(this.siteRadius, len);
+      this.siteLevel = Arrays.copyOf(this.siteLevel, len);
+    }
+    final int site = this.sites++;
+    this.siteX[site] = x;
+    this.siteY[site] = y;
+    this.siteRadius[site] = radius;
+    this.siteLevel[site] = level;
+    this.siteIds.put(key, site);
+    return site;
+  }
+}
@@ -0,0 +1,139 @@
+package personthecat.roadmap.data;
+
+import java.util.Arrays;
+
+public class IndexedHeap implements OpenList {
+  private static final int ARITY = 4;
+  private static final int INITIAL_SIZE = 256;
+
+  private int[] heap;
+  private float[] keys;
+  private int[] slots;
+  private int size;
+
+  public IndexedHeap(final int capacity) {
+    this.heap = new int[INITIAL_SIZE];
+    this.keys = new float[INITIAL_SIZE];
+    this.slots = new int[capacity];
+    Arrays.fill(this.slots, -1);
+  }
+
+  @Override
+  public void offer(final int id, final float priority) {
+    this.ensureCapacity(id + 1);
+    final int s = this.slots[id];
+    if (s < 0) {
+      if (this.size == this.heap.length) {
+        this.heap = Arrays.copyOf(this.heap, this.size * 2);
+        this.keys = Arrays.copyOf(this.keys, this.size * 2);
+      }
+      final int last = this.size++;
+      this.heap[last] = id;
+      this.keys[last] = priority;
+      this.siftUp(last);
+    } else if (priority < this.keys[s]) {
+      this.keys[s] = priority;
+      this.siftUp(s);
+    } else if (priority > this.keys[s]) {
+      this.keys[s] = priority;
+      this.siftDown(s);
+    }
+  }
+
+  @Override
+  public int poll() {
+    final int id = this.heap[0];
+    this.slots[id] = -1;
+    final int last = --this.size;
+    if (last > 0) {
+      this.heap[0] = this.heap[last];
+      this.keys[0] = this.keys[last];
+      this.siftDown(0);
+    }
+    return id;
+  }
+
+  @Override
+  public boolean contains(final int id) {
+    return id < this.slots.length && this.slots[id] >= 0;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public void clear() {
+    // only the ids still queued have slots to release
+    for (int i = 0; i < this.size; i++) {
+      this.slots[this.heap[i]] = -1;
+    }
+    this.size = 0;
+  }
+
+  private void siftUp(int s) {
+    final int id = this.heap[s];
+    final float key = this.keys[s];
+    while (s > 0) {
+      final int p = (s - 1) / ARITY;
+      if (this.keys[p] <= key) {
+        break;
+      }
+      this.move(p, s);
+      s = p;
+    }
+    this.place(s, id, key);
+  }
+
+  private void siftDown(int s) {
+    final int id = this.heap[s];
+    final float key = this.keys[s];
+    while (true) {
+      final int first = s * ARITY + 1;
+      if (first >= this.size) {
+        break;
+      }
+      final int end = Math.min(first + ARITY, this.size);
+      int min = first;
+      for (int c = first + 1; c < end; c++) {
+        if (this.keys[c] < this.keys[min]) {
+          min = c;
+        }
+      }
+      if (this.keys[min] >= key) {
+        break;
+      }
+      this.move(min, s);
+      s = min;
+    }
+    this.place(s, id, key);
+  }
+
+  private void move(final int from, final int to) {
+    final int id = this.heap[from];
+    this.heap[to] = id;
+    this.keys[to] = this.keys[from];
+    this.slots[id] = to;
+  }
+
+  private void place(final int s, final int id, final float key) {
+    this.heap[s] = id;
+    this.keys[s] = key;
+    this.slots[id] = s;
+  }
+
+  private void ensureCapacity(final int ids) {
+    if (ids > this.slots.length) {
+      final int len = Math.max(ids, this.slots.length * 2);
+      final int old = this.slots.length;
+      this.slots = Arrays.copyOf(this.slots, len);
+      Arrays.fill(this.slots, old, len, -1);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package personthecat.roadmap.data;
+
+import personthecat.roadmap.gen.HeightmapView;
+import personthecat.roadmap.util.Utils;
+
+// Standard deviations of the terrain computed from summed-area tables of h and h^2, one pair per 64x64 block tile.
+// Each tile is sampled on the same 4 block lattice as LatticeSmoothnessGraph, with enough margin for any window
+// centered inside of it, and the tables are built in a single pass. The SD of a window of any radius then takes four
+// lookups per table, so larger neighborhoods cost no more than small ones. Only the SDs at each lattice point are
+// kept, and blocks between them are interpolated.
+public class IntegralSmoothnessGraph implements SmoothnessGraph {
+  private static final int SHIFT = 6;
+  private static final int MASK = (1 << SHIFT) - 1;
+  private static final int STEP_SHIFT = 2;
+  private static final int STEP = 1 << STEP_SHIFT;
+  private static final int POINTS = (1 << SHIFT) / STEP;
+  // a tile covers this many of the 16x16 block chunks counted by the cache size
+  private static final int CHUNKS_PER_TILE = (1 << SHIFT) * (1 << SHIFT) / 256;
+
+  private final TerrainCache<Tile> tiles;
+  private final int radius;
+
+  public IntegralSmoothnessGraph(final int capacity, final int radius) {
+    this.tiles = new TerrainCache<>(Math.max(1, capacity / CHUNKS_PER_TILE));
+    this.radius = radius;
+  }
+
+  @Override
+  public float getSd(final HeightmapView gen, final int x, final int y) {
+    final int tX = x >> SHIFT;
+    final int tY = y >> SHIFT;
+    final float[] sds = this.getSds(gen, tX, tY);
+    final int rX = x & MASK;
+    final int rY = y & MASK;
+    final int a = rX >> STEP_SHIFT;
+    final int b = rY >> STEP_SHIFT;
+    final float fX = (float) (rX & (STEP - 1)) / STEP;
+    final float fY = (float) (rY & (STEP - 1)) / STEP;
+    final int o = a * (POINTS + 1) + b;
+    final float l = Utils.lerp(sds[o], sds[o + 1], fY);
+    final float u = Utils.lerp(sds[o + POINTS + 1], sds[o + POINTS + 2], fY);
+    return Utils.lerp(l, u, fX);
+  }
+
+  private float[] getSds(final HeightmapView gen, final int tX, final int tY) {
+    final Tile tile = this.tiles.get(gen.getTerrainKey(), tX, tY, Tile::new);
+    float[] sds = tile.sds;
+    if (sds == null) {
+      synchronized (tile) {
+        sds = tile.sds;
+        if (sds == null) {
+          tile.sds = sds = this.build(gen, tX, tY);
+        }
+      }
+    }
+    return sds;
+  }
+
+  // Samples the tile and its margin column by column, accumulating both tables as it goes.
+  private float[] build(final HeightmapView gen, final int tX, final int tY) {
+    final int r = this.radius;
+    final int n = POINTS + 1 + r * 2;
+    final int m = n + 1;
+    final float[] samples = new float[n * n];
+    gen.sampleCoarseRect((tX << SHIFT) - r * STEP, (tY << SHIFT) - r * STEP, n, n, STEP, samples);
+    final double[] sum = new double[m * m];
+    final double[] sq = new double[m * m];
+    for (int i = 0; i < n; i++) {
+      double colSum = 0;
+      double colSq = 0;
+      for (int j = 0; j < n; j++) {
+        final double h = samples[i * n + j];
+        colSum += h;
+        colSq += h * h;
+        final int o = (i + 1) * m + j + 1;
+        sum[o] = sum[o - m] + colSum;
+        sq[o] = sq[o - m] + colSq;
+      }
+    }
+    final float[] sds = new float[(POINTS + 1) * (POINTS + 1)];
+    for (int a = 0; a <= POINTS; a++) {
+      for (int b = 0; b <= POINTS; b++) {
+        sds[a * (POINTS + 1) + b] = (float) this.query(sum, sq, m, a, b);
+      }
+    }
+    return sds;
+  }
+
+  // the SD of the window centered on lattice point a, b of a tile
+  private double query(final double[] sum, final double[] sq, final int m, final int a, final int b) {
+    final int d = this.radius * 2 + 1;
+    final int lo = a * m + b;
+    final int hi = (a + d) * m + b;
+    final double s = sum[hi + d] - sum[lo + d] - sum[hi] + sum[lo];
+    final double q = sq[hi + d] - sq[lo + d] - sq[hi] + sq[lo];
+    final double k = d * d;
+    final double mean = s / k;
+    return Math.sqrt(Math.max(0, q / k - mean * mean));
+  }
+
+  @Override
+  public void clear() {
+    this.tiles.clear();
+  }
+
+  private static class Tile {
+    volatile float[] sds;
+  }
+}
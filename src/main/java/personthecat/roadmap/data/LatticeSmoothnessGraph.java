@@ -0,0 +1,142 @@
+package personthecat.roadmap.data;
+
+import personthecat.roadmap.util.Utils;
+import personthecat.roadmap.gen.HeightmapView;
+
+import java.util.Arrays;
+
+// Standard deviations of the terrain, computed on a 4 block lattice and interpolated between. One graph is shared by
+// every generator for a road map, so neighboring regions and pregen threads reuse each other's work. Chunks are
+// locked individually while being computed.
+public class LatticeSmoothnessGraph implements SmoothnessGraph {
+  private final TerrainCache<Data> chunks;
+
+  public LatticeSmoothnessGraph(final int capacity) {
+    this.chunks = new TerrainCache<>(capacity);
+  }
+
+  @Override
+  public float getSd(final HeightmapView gen, final int x, final int y) {
+    final int cX = x >> 4;
+    final int cY = y >> 4;
+    final int rX = x & 15;
+    final int rY = y & 15;
+    final int lX = lowerCorner(rX);
+    final int lY = lowerCorner(rY);
+    final Data data = this.getData(gen.getTerrainKey(), cX, cY);
+    final int cell = 1 << (lX | lY >> 2);
+    synchronized (data) {
+      if ((data.computed & cell) == 0) {
+        this.compute(gen, data, cX, cY, lX, lY);
+        data.computed |= cell;
+      }
+      return data.get(rX, rY);
+    }
+  }
+
+  protected Data getData(final int terrainKey, final int cX, final int cY) {
+    return this.chunks.get(terrainKey, cX, cY, Data::new);
+  }
+
+  protected void compute(final HeightmapView gen, final Data data, final int cX, final int cY, final int lX, final int lY) {
+    final int uX = lX + 4;
+    final int uY = lY + 4;
+    // get samples around 4 corners
+    final float[] column = new float[4];
+    this.sampleColumn(gen, data, cX, cY, lX - 4, lY, 2, column);
+    this.sampleColumn(gen, data, cX, cY, lX, lY - 4, 4, column);
+    this.sampleColumn(gen, data, cX, cY, uX, lY - 4, 4, column);
+    this.sampleColumn(gen, data, cX, cY, uX + 4, lY, 2, column);
+    // calculate SDs at each corner
+    final float ll = (float) this.computeSd(data, lX, lY);
+    final float lu = (float) this.computeSd(data, lX, uY);
+    final float ul = (float) this.computeSd(data, uX, lY);
+    final float uu = (float) this.computeSd(data, uX, uY);
+
+    // interpolate within this cell only. The upper corners belong to the next cell, which may be in the next chunk.
+    for (int i = 0; i < 4; i++) {
+      final float a = Utils.lerp(ll, lu, i * 0.25F);
+      final float b = Utils.lerp(ul, uu, i * 0.25F);
+      data.set(lX, lY + i, a);
+      data.set(lX + 1, lY + i, Utils.lerp(a, b, 0.25F));
+      data.set(lX + 2, lY + i, Utils.lerp(a, b, 0.5F));
+      data.set(lX + 3, lY + i, Utils.lerp(a, b, 0.75F));
+    }
+  }
+
+  // samples a column of the lattice in one batch, unless every sample in it is already known
+  private void sampleColumn(
+      final HeightmapView gen, final Data data, final int cX, final int cY,
+      final int x, final int minY, final int h, final float[] out) {
+    boolean missing = false;
+    for (int j = 0; j < h; j++) {
+      if (Float.isNaN(data.getSample(x, minY + j * 4))) {
+        missing = true;
+        break;
+      }
+    }
+    if (!missing) {
+      return;
+    }
+    gen.sampleCoarseRect((cX << 4) + x, (cY << 4) + minY, 1, h, 4, out);
+    for (int j = 0; j < h; j++) {
+      if (Float.isNaN(data.getSample(x, minY + j * 4))) {
+        data.setSample(x, minY + j * 4, out[j]);
+      }
+    }
+  }
+
+  protected double computeSd(final Data data, final int rX, final int rY) {
+    return Utils.stdDev(
+        data.getSample(rX, rY),
+        data.getSample(rX, rY + 4),
+        data.getSample(rX, rY - 4),
+        data.getSample(rX + 4, rY),
+        data.getSample(rX - 4, rY)
+    );
+  }
+
+  @Override
+  public void clear() {
+    this.chunks.clear();
+  }
+
+  // tracks which 4x4 cells are done explicitly, since an SD of 0 is perfectly valid on flat ground
+  protected static class Data {
+    final float[] sds = new float[256];
+    final float[] samples = new float[49];
+    int computed;
+
+    Data() {
+      Arrays.fill(this.samples, Float.NaN);
+    }
+
+    public float get(final int rX, final int rY) {
+      return this.sds[indexOf(rX, rY)];
+    }
+
+    public void set(final int rX, final int rY, final float f) {
+      this.sds[indexOf(rX, rY)] = f;
+    }
+
+    public float getSample(final int rX, final int rY) {
+      return this.samples[indexOfSample(rX, rY)];
+    }
+
+    public void setSample(final int rX, final int rY, final float f) {
+      this.samples[indexOfSample(rX, rY)] = f;
+    }
+  }
+
+  protected static int lowerCorner(final int i) {
+    return i >> 2 << 2;
+  }
+
+  protected static int indexOfSample(final int rX, final int rY) {
+    return ((rX + 4) >> 2) * 7 + ((rY + 4) >> 2);
+  }
+
+  protected static int indexOf(final int x, final int y) {
+    return ((x & 15) << 4) + (y & 15);
+  }
+}
@@ -0,0 +1,10 @@
+package personthecat.roadmap.data;
+
+public interface OpenList {
+  void offer(final int id, final float priority);
+  int poll();
+  boolean contains(final int id);
+  boolean isEmpty();
+  int size();
+  void clear();
+}
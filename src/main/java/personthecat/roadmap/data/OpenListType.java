@@ -0,0 +1,24 @@
+package personthecat.roadmap.data;
+
+import personthecat.roadmap.Config;
+
+import java.util.stream.Stream;
+
+public enum OpenListType {
+  HEAP,
+  BUCKET;
+
+  public static OpenListType from(final String type) {
+    return Stream.of(values())
+        .filter(t -> t.name().equalsIgnoreCase(type))
+        .findFirst()
+        .orElse(null);
+  }
+
+  public OpenList create(final Config config, final int capacity) {
+    return switch (this) {
+      case HEAP -> new IndexedHeap(capacity);
+      case BUCKET -> new BucketQueue(capacity, config.getBucketWidth());
+    };
+  }
+}
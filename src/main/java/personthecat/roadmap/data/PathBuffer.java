@@ -0,0 +1,49 @@
+package personthecat.roadmap.data;
+
+import java.util.Arrays;
+
+// A reusable, growable list of coordinates that searches trace their paths into.
+public class PathBuffer {
+  private static final int INITIAL_SIZE = 1024;
+
+  private int[] xs = new int[INITIAL_SIZE];
+  private int[] ys = new int[INITIAL_SIZE];
+  private int size;
+
+  public void clear() {
+    this.size = 0;
+  }
+
+  public void add(final int x, final int y) {
+    if (this.size == this.xs.length) {
+      this.xs = Arrays.copyOf(this.xs, this.size * 2);
+      this.ys = Arrays.copyOf(this.ys, this.size * 2);
+    }
+    this.xs[this.size] = x;
+    this.ys[this.size] = y;
+    this.size++;
+  }
+
+  public void reverse(final int from, final int to) {
+    for (int a = from, b = to - 1; a < b; a++, b--) {
+      final int x = this.xs[a];
+      final int y = this.ys[a];
+      this.xs[a] = this.xs[b];
+      this.ys[a] = this.ys[b];
+      this.xs[b] = x;
+      this.ys[b] = y;
+    }
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public int getX(final int i) {
+    return this.xs[i];
+  }
+
+  public int getY(final int i) {
+    return this.ys[i];
+  }
+}
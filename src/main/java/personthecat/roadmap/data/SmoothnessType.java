@@ -0,0 +1,24 @@
+package personthecat.roadmap.data;
+
+import personthecat.roadmap.Config;
+
+import java.util.stream.Stream;
+
+public enum SmoothnessType {
+  LATTICE,
+  INTEGRAL;
+
+  public static SmoothnessType from(final String type) {
+    return Stream.of(values())
+        .filter(t -> t.name().equalsIgnoreCase(type))
+        .findFirst()
+        .orElse(null);
+  }
+
+  public SmoothnessGraph create(final Config config) {
+    return switch (this) {
+      case LATTICE -> new LatticeSmoothnessGraph(config.getSmoothnessCacheSize());
+      case INTEGRAL -> new IntegralSmoothnessGraph(config.getSmoothnessCacheSize(), config.getSmoothnessRadius());
+    };
+  }
+}
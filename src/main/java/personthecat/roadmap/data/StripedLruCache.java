@@ -0,0 +1,127 @@
+package personthecat.roadmap.data;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+// A size-bounded map of long keys, split across independently locked stripes so that many threads can share it.
+// Values are created on first use and the least recently used are dropped once a stripe fills up. Keys may also be
+// tagged, e.g. with the terrain they were computed for, so that values for several tags can live side by side.
+public class StripedLruCache<T> {
+  private static final int STRIPES = 16;
+
+  private final Stripe<T>[] stripes;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public StripedLruCache(final int capacity) {
+    final int perStripe = Math.max(1, capacity / STRIPES);
+    this.stripes = new Stripe[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      this.stripes[i] = new Stripe<>(perStripe);
+    }
+  }
+
+  public static long key(final int x, final int y) {
+    return ((long) x << 32) | (y & 0xFFFFFFFFL);
+  }
+
+  public T get(final long key, final Supplier<T> factory) {
+    return this.get(0, key, factory);
+  }
+
+  public T get(final int tag, final long key, final Supplier<T> factory) {
+    final Stripe<T> s = this.stripes[(int) (key ^ (key >>> 29) ^ (key >>> 32)) & (STRIPES - 1)];
+    synchronized (s) {
+      return s.get(tag, key, factory);
+    }
+  }
+
+  public void clear() {
+    for (final Stripe<T> s : this.stripes) {
+      synchronized (s) {
+        s.entries.clear();
+        s.size = 0;
+      }
+    }
+  }
+
+  private static class Stripe<T> {
+    final Long2ObjectMap<Entry<T>> entries = new Long2ObjectOpenHashMap<>();
+    final int capacity;
+    int size;
+    long clock;
+
+    Stripe(final int capacity) {
+      this.capacity = capacity;
+    }
+
+    // entries sharing a key are chained, and there is rarely more than one
+    T get(final int tag, final long key, final Supplier<T> factory) {
+      for (Entry<T> e = this.entries.get(key); e != null; e = e.next) {
+        if (e.tag == tag) {
+          e.used = ++this.clock;
+          return e.value;
+        }
+      }
+      this.evictIfFull();
+      final Entry<T> e = new Entry<>(tag, factory.get(), this.entries.get(key));
+      this.entries.put(key, e);
+      this.size++;
+      e.used = ++this.clock;
+      return e.value;
+    }
+
+    // drop the least recently used quarter in one pass rather than scanning on every miss
+    void evictIfFull() {
+      if (this.size < this.capacity) {
+        return;
+      }
+      final long[] stamps = new long[this.size];
+      int i = 0;
+      for (final Entry<T> head : this.entries.values()) {
+        for (Entry<T> e = head; e != null; e = e.next) {
+          stamps[i++] = e.used;
+        }
+      }
+      Arrays.sort(stamps);
+      final long cutoff = stamps[stamps.length - this.capacity * 3 / 4 - 1];
+      this.size = 0;
+      for (final Long2ObjectMap.Entry<Entry<T>> m : this.entries.long2ObjectEntrySet()) {
+        Entry<T> head = null;
+        Entry<T> last = null;
+        for (Entry<T> e = m.getValue(); e != null; e = e.next) {
+          if (e.used > cutoff) {
+            if (last == null) {
+              head = e;
+            } else {
+              last.next = e;
+            }
+            last = e;
+            this.size++;
+          }
+        }
+        if (last != null) {
+          last.next = null;
+        }
+        m.setValue(head);
+      }
+      this.entries.values().removeIf(Objects::isNull);
+    }
+  }
+
+  private static class Entry<T> {
+    final int tag;
+    final T value;
+    Entry<T> next;
+    long used;
+
+    Entry(final int tag, final T value, final Entry<T> next) {
+      this.tag = tag;
+      this.value = value;
+      this.next = next;
+    }
+  }
+}
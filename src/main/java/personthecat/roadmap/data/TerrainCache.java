@@ -0,0 +1,22 @@
+package personthecat.roadmap.data;
+
+import java.util.function.Supplier;
+
+// A StripedLruCache of values that are only valid for the terrain they were computed for. Entries are tagged with
+// their terrain key, so views of different terrains can share the cache, and entries of terrains nobody asks for
+// anymore simply age out.
+public class TerrainCache<T> {
+  private final StripedLruCache<T> entries;
+
+  public TerrainCache(final int capacity) {
+    this.entries = new StripedLruCache<>(capacity);
+  }
+
+  public T get(final int terrainKey, final int x, final int y, final Supplier<T> factory) {
+    return this.entries.get(terrainKey, StripedLruCache.key(x, y), factory);
+  }
+
+  public void clear() {
+    this.entries.clear();
+  }
+}
@@ -12,8 +12,11 @@ import java.io.IOException;
 public final class VertexGraph {
   private static final int MIN_SIG_DISTANCE = 32;
   private static final int SCAN_RADIUS = MIN_SIG_DISTANCE + RoadVertex.MAX_RADIUS;
+  // Vertices farther than this from a lookup can't change its answer, allowing for the cells of a DistanceField.
+  public static final int INFLUENCE = SCAN_RADIUS + RoadVertex.MAX_RADIUS + 8;
 
   private final NeighborMap<NeighborMap<Node>> graph;
+  private DistanceField field;
 
   public VertexGraph() {
     this.graph = new NeighborMap<>();
@@ -31,8 +34,27 @@ public final class VertexGraph {
   }
 
   public void plot(final RoadVertex v, final byte l) {
-    this.graph.computeIfAbsent(v.x, _x -> new NeighborMap<>())
-        .compute(v.y, (_y, n) -> (n == null) ? new Node(v, l) : n.putUnder(v, l));
+    final Node n = this.graph.computeIfAbsent(v.x, _x -> new NeighborMap<>())
+        .compute(v.y, (_y, n0) -> (n0 == null) ? new Node(v, l) : n0.putUnder(v, l));
+    if (this.field != null) {
+      this.field.plot(v.x, v.y, n.radius, n.level);
+    }
+  }
+
+  // Rasterizes every vertex in range of these bounds so targets can look up distances in O(1).
+  public void trackDistances(final int minX, final int minY, final int maxX, final int maxY) {
+    final DistanceField field = new DistanceField(
+        minX - SCAN_RADIUS, minY - SCAN_RADIUS, maxX + SCAN_RADIUS, maxY + SCAN_RADIUS, SCAN_RADIUS);
+    for (final NeighborMap.Entry<NeighborMap<Node>> column : this.graph.entries()) {
+      for (final NeighborMap.Entry<Node> node : column.t.entries()) {
+        field.plot(column.c, node.c, node.t.radius, node.t.level);
+      }
+    }
+    this.field = field;
+  }
+
+  public void releaseDistances() {
+    this.field = null;
   }
 
   public void endBatch() {
@@ -197,13 +219,26 @@ public final class VertexGraph {
     public byte l;
 
     protected Target(final VertexResult v) {
-      this.x = v.x;
-      this.y = v.y;
-      this.l = (byte) (v.level + 1);
+      this(v.x, v.y, (byte) (v.level + 1));
+    }
+
+    private Target(final int x, final int y, final byte l) {
+      this.x = x;
+      this.y = y;
+      this.l = l;
+    }
+
+    // the same target, tracking its own road level
+    public Target copy(final byte l) {
+      return new Target(this.x, this.y, l);
     }
 
     // to optimize slightly, store the target once we are close enough
     public double distance(int x, int y, double min) {
+      final DistanceField field = VertexGraph.this.field;
+      if (field != null && field.contains(x, y)) {
+        return this.fieldDistance(field, x, y);
+      }
       final VertexResult nearest = VertexGraph.this.getNearest(x, y, min);
       if (nearest == null) return Double.MAX_VALUE;
       final double d = nearest.distance;
@@ -215,6 +250,18 @@ public final class VertexGraph {
       return Math.sqrt(((this.x - x) * (this.x - x)) + ((this.y - y) * (this.y - y)));
     }
 
+    private double fieldDistance(final DistanceField field, final int x, final int y) {
+      final int site = field.getNearest(x, y);
+      if (site >= 0) {
+        final double d = field.distance(site, x, y);
+        if (d < SCAN_RADIUS) {
+          this.l = (byte) (field.getLevel(site) + 1);
+          return d;
+        }
+      }
+      return Math.sqrt(((this.x - x) * (this.x - x)) + ((this.y - y) * (this.y - y)));
+    }
+
     @Override
     public byte getRoadLevel() {
       return this.l;
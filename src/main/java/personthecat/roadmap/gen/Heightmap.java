@@ -0,0 +1,138 @@
+package personthecat.roadmap.gen;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+// The samples currently on screen. Blocks are stored at their absolute coordinates modulo the size of the map, so a
+// block keeps its slot for as long as it stays in view and panning only has to write the strips being exposed.
+public class Heightmap {
+  private final float[] data;
+  private final int w;
+  private final int h;
+  private volatile int stamp;
+  private int xOffset;
+  private int yOffset;
+  private int lod;
+  private int terrainKey;
+  private boolean filled;
+
+  public Heightmap(final int w, final int h) {
+    this.data = new float[w * h];
+    this.w = w;
+    this.h = h;
+  }
+
+  public int getWidth() {
+    return this.w;
+  }
+
+  public int getHeight() {
+    return this.h;
+  }
+
+  public int getXOffset() {
+    return this.xOffset;
+  }
+
+  public int getYOffset() {
+    return this.yOffset;
+  }
+
+  public int getLod() {
+    return this.lod;
+  }
+
+  public int getTerrainKey() {
+    return this.terrainKey;
+  }
+
+  public boolean isFilled() {
+    return this.filled;
+  }
+
+  // x and y are relative to the corner of the screen
+  public float get(final int x, final int y) {
+    return this.data[this.slot(this.xOffset + x, this.yOffset + y)];
+  }
+
+  // x and y are absolute
+  void set(final int x, final int y, final float n) {
+    this.data[this.slot(x, y)] = n;
+  }
+
+  private int slot(final int x, final int y) {
+    return Math.floorMod(x, this.w) * this.h + Math.floorMod(y, this.h);
+  }
+
+  // Reads a block from another thread, returning NaN if it is out of view, was being written at the time, belongs to
+  // different terrain, or is only an approximation.
+  float sample(final int x, final int y, final int terrainKey) {
+    final int s = this.stamp;
+    if ((s & 1) != 0 || !this.filled || this.lod != 0 || this.terrainKey != terrainKey) {
+      return Float.NaN;
+    }
+    final int xO = this.xOffset;
+    final int yO = this.yOffset;
+    if (x < xO || x >= xO + this.w || y < yO || y >= yO + this.h) {
+      return Float.NaN;
+    }
+    final float n = this.data[this.slot(x, y)];
+    VarHandle.loadLoadFence();
+    return this.stamp == s ? n : Float.NaN;
+  }
+
+  // Copies whichever blocks of a rectangle are in view into out, leaving the rest untouched.
+  void read(
+      final int x, final int y, final int w, final int h, final int stride, final int terrainKey, final float[] out) {
+    final int s = this.stamp;
+    if ((s & 1) != 0 || !this.filled || this.lod != 0 || this.terrainKey != terrainKey) {
+      return;
+    }
+    final int minI = firstInside(x, this.xOffset, stride);
+    final int maxI = Math.min(w, firstInside(x, this.xOffset + this.w, stride));
+    final int minJ = firstInside(y, this.yOffset, stride);
+    final int maxJ = Math.min(h, firstInside(y, this.yOffset + this.h, stride));
+    if (minI >= maxI || minJ >= maxJ) {
+      return;
+    }
+    final int row = Math.floorMod(y + minJ * stride, this.h);
+    for (int i = minI; i < maxI; i++) {
+      final int col = Math.floorMod(x + i * stride, this.w) * this.h;
+      int r = row;
+      for (int j = minJ; j < maxJ; j++) {
+        out[i * h + j] = this.data[col + r];
+        r += stride;
+        if (r >= this.h) {
+          r %= this.h;
+        }
+      }
+    }
+    VarHandle.loadLoadFence();
+    if (this.stamp != s) {
+      for (int i = minI; i < maxI; i++) {
+        Arrays.fill(out, i * h + minJ, i * h + maxJ, Float.NaN);
+      }
+    }
+  }
+
+  // the index of the first sample at or beyond edge, or 0 if every sample is
+  private static int firstInside(final int start, final int edge, final int stride) {
+    return start >= edge ? 0 : (edge - start + stride - 1) / stride;
+  }
+
+  // readers fall back to the noise while the stamp is odd
+  void beginWrite() {
+    this.stamp++;
+    // a volatile write only orders what came before it, so the odd stamp has to be fenced ahead of the plain writes
+    VarHandle.storeStoreFence();
+  }
+
+  void endWrite(final int xOffset, final int yOffset, final int lod, final int terrainKey) {
+    this.xOffset = xOffset;
+    this.yOffset = yOffset;
+    this.lod = lod;
+    this.terrainKey = terrainKey;
+    this.filled = true;
+    this.stamp++;
+  }
+}
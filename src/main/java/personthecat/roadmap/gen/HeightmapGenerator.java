@@ -1,17 +1,30 @@
 package personthecat.roadmap.gen;
 
-import personthecat.fastnoise.FastNoise;
 import personthecat.fastnoise.data.*;
 import personthecat.roadmap.Config;
 import personthecat.roadmap.data.Tracker;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
 public class HeightmapGenerator {
+  private static final BooleanSupplier NEVER = () -> false;
+
   private final Config config;
   private final Tracker tracker;
-  private FastNoise generator;
-  private float[][] prevMap;
-  private int h;
-  private int w;
+  private volatile HeightmapView view;
+  private int terrainKey;
+  private String terrainId;
+  private SampleCache cache;
+  private int cacheCapacity;
+  private Heightmap map;
+  private HeightmapStore store;
+  private ForkJoinPool pool;
 
   public HeightmapGenerator(final Config config, final Tracker tracker) {
     this.config = config;
@@ -19,79 +32,260 @@ public class HeightmapGenerator {
     this.reload();
   }
 
+  // The terrain key only moves on when the samples would change, so that everything cached against the terrain
+  // survives reloads that leave it alone.
   public void reload() {
-    this.generator = this.createGenerator();
+    final String id = this.getTerrainId();
+    if (!id.equals(this.terrainId)) {
+      this.terrainId = id;
+      this.terrainKey++;
+      this.cache = null;
+    }
+    final int capacity = this.config.getSampleCacheSize();
+    if (this.cache == null || capacity != this.cacheCapacity) {
+      this.cache = capacity > 0 ? new SampleCache(capacity) : null;
+      this.cacheCapacity = capacity;
+    }
+    this.view = new HeightmapView(
+        this.createDescriptor(),
+        this.cache,
+        this.getStore(),
+        this.map,
+        this.terrainKey,
+        this.config.getSurfaceScale(),
+        this.config.getMaxLodError(),
+        this.config.getCoarseLod());
   }
 
-  public float sample(final int x, final int y) {
-    if (this.isInBounds(x, y)) {
-      return this.prevMap[x - this.tracker.getXOffset()][y - this.tracker.getYOffset()];
+  // Gives the next reload a new terrain key, for when something derived from the terrain changed but the noise didn't.
+  public void invalidate() {
+    this.terrainId = null;
+  }
+
+  private HeightmapStore getStore() {
+    if (!this.config.isPersistHeightmap()) {
+      return this.store = null;
+    }
+    final String key = this.getStoreKey();
+    if (this.store == null || !this.store.getKey().equals(key)) {
+      this.store = new HeightmapStore(key);
     }
-    return this.getNoise(x, y);
+    return this.store;
   }
 
-  private boolean isInBounds(final int x, final int y) {
-    final int xO = this.tracker.getXOffset();
-    final int yO = this.tracker.getYOffset();
-    return x >= xO && x < (xO + this.w) && y >= yO && y < (yO + this.h);
+  // Every value that shapes the noise, written out in full so that two terrains can never share a directory.
+  private String getStoreKey() {
+    return String.join("-",
+        Integer.toHexString(this.tracker.getSeed()),
+        Integer.toHexString(Float.floatToIntBits(this.tracker.getFrequency())),
+        Integer.toHexString(Float.floatToIntBits(this.tracker.getGrooveFrequency())),
+        this.tracker.isMountains() ? "m" : "f",
+        this.config.getMapType().name().toLowerCase(),
+        this.config.getGrooveType().name().toLowerCase(),
+        Integer.toString(this.config.getMinY()),
+        Integer.toString(this.config.getMaxY()),
+        Integer.toString(this.config.getGrooveSize()),
+        Integer.toHexString(Float.floatToIntBits(this.config.getSurfaceScale())));
   }
 
-  private float getNoise(final int x, final int y) {
-    final float n = this.generator.getNoiseScaled(x, y);
-    return n > 0 ? n * this.config.getSurfaceScale() : n;
+  // the noise, plus the settings that shape how it is sampled
+  private String getTerrainId() {
+    return String.join("-",
+        this.getStoreKey(),
+        Integer.toString(this.config.getCoarseLod()),
+        Integer.toHexString(Float.floatToIntBits(this.config.getMaxLodError())));
   }
 
-  public float[][] generate(final int h, final int w, final boolean reload) {
-    final float[][] map = new float[w][h];
-    if (this.prevMap == null || reload) {
-      this.writeNewMap(map);
+  public HeightmapView getView() {
+    return this.view;
+  }
+
+  public Heightmap generate(final int h, final int w, final boolean reload) {
+    return this.generate(h, w, reload, this.config.getMapLod());
+  }
+
+  public Heightmap generate(final int h, final int w, final boolean reload, final int lod) {
+    Heightmap map = this.map;
+    if (map == null || map.getWidth() != w || map.getHeight() != h) {
+      map = new Heightmap(w, h);
+    }
+    final HeightmapView view = this.view;
+    final int xOffset = this.tracker.getXOffset();
+    final int yOffset = this.tracker.getYOffset();
+    map.beginWrite();
+    if (reload || !map.isFilled() || map.getLod() != lod || map.getTerrainKey() != view.getTerrainKey()) {
+      this.writeNewMap(view, map, xOffset, yOffset, lod);
     } else {
-      this.writePartialMap(map);
+      this.writePartialMap(view, map, xOffset, yOffset, lod);
+    }
+    map.endWrite(xOffset, yOffset, lod, view.getTerrainKey());
+    if (map != this.map) {
+      this.map = map;
+      this.view = view.withMap(map);
     }
-    this.prevMap = map;
-    this.h = h;
-    this.w = w;
     return map;
   }
 
-  private void writeNewMap(final float[][] map) {
-    final int xOffset = this.tracker.getXOffset();
-    final int yOffset = this.tracker.getYOffset();
-    for (int x = 0; x < map.length; x++) {
-      for (int y = 0; y < map[0].length; y++) {
-        map[x][y] = this.getNoise(x + xOffset, y + yOffset);
-      }
+  // Fills a map away from the UI thread without publishing it, returning null if cancelled before it finishes.
+  public Heightmap prepare(
+      final HeightmapView view, final int xOffset, final int yOffset, final int w, final int h, final int lod,
+      final BooleanSupplier cancelled) {
+    final Heightmap map = new Heightmap(w, h);
+    map.beginWrite();
+    this.fill(view, map, xOffset, xOffset + w, yOffset, yOffset + h, lod, cancelled);
+    if (cancelled.getAsBoolean()) {
+      return null;
     }
+    map.endWrite(xOffset, yOffset, lod, view.getTerrainKey());
+    return map;
   }
 
-  private void writePartialMap(final float[][] map) {
-    final int xOffset = this.tracker.getXOffset();
-    final int yOffset = this.tracker.getYOffset();
-    final int xD = xOffset - this.tracker.getPrevXOffset();
-    final int yD = yOffset - this.tracker.getPrevYOffset();
-
-    for (int x = 0; x < map.length; x++) {
-      final int xO = x + xD;
-      for (int y = 0; y < map[0].length; y++) {
-        final int yO = y + yD;
-        if (xO >= 0 && xO < map.length && yO >= 0 && yO < map[0].length) {
-          map[x][y] = this.prevMap[xO][yO];
-        } else {
-          map[x][y] = this.getNoise(x + xOffset, y + yOffset);
+  // Swaps in a map from prepare(), unless the terrain has changed since it was started.
+  public boolean install(final Heightmap map) {
+    final HeightmapView view = this.view;
+    if (map.getTerrainKey() != view.getTerrainKey()) {
+      return false;
+    }
+    this.map = map;
+    this.view = view.withMap(map);
+    return true;
+  }
+
+  private void writeNewMap(
+      final HeightmapView view, final Heightmap map, final int xOffset, final int yOffset, final int lod) {
+    this.fill(view, map, xOffset, xOffset + map.getWidth(), yOffset, yOffset + map.getHeight(), lod);
+  }
+
+  // blocks still in view keep their slots, so only the newly exposed columns and rows get written
+  private void writePartialMap(
+      final HeightmapView view, final Heightmap map, final int xOffset, final int yOffset, final int lod) {
+    final int w = map.getWidth();
+    final int h = map.getHeight();
+    final int pX = map.getXOffset();
+    final int pY = map.getYOffset();
+    if (Math.abs(xOffset - pX) >= w || Math.abs(yOffset - pY) >= h) {
+      this.writeNewMap(view, map, xOffset, yOffset, lod);
+      return;
+    }
+    final int minX = Math.max(xOffset, pX);
+    final int maxX = Math.min(xOffset, pX) + w;
+    if (xOffset > pX) {
+      this.fill(view, map, pX + w, xOffset + w, yOffset, yOffset + h, lod);
+    } else if (xOffset < pX) {
+      this.fill(view, map, xOffset, pX, yOffset, yOffset + h, lod);
+    }
+    if (yOffset > pY) {
+      this.fill(view, map, minX, maxX, pY + h, yOffset + h, lod);
+    } else if (yOffset < pY) {
+      this.fill(view, map, minX, maxX, yOffset, pY, lod);
+    }
+  }
+
+  private void fill(
+      final HeightmapView view, final Heightmap map,
+      final int minX, final int maxX, final int minY, final int maxY, final int lod) {
+    this.fill(view, map, minX, maxX, minY, maxY, lod, NEVER);
+  }
+
+  // cancelling skips any bands not yet started
+  private void fill(
+      final HeightmapView view, final Heightmap map,
+      final int minX, final int maxX, final int minY, final int maxY, final int lod, final BooleanSupplier cancelled) {
+    if (maxX - minX >= maxY - minY) {
+      this.forEachBand(maxX - minX, (a, b) -> {
+        if (!cancelled.getAsBoolean()) {
+          this.writeNoise(view, map, minX + a, minX + b, minY, maxY, lod);
+        }
+      });
+    } else {
+      this.forEachBand(maxY - minY, (a, b) -> {
+        if (!cancelled.getAsBoolean()) {
+          this.writeNoise(view, map, minX, maxX, minY + a, minY + b, lod);
         }
+      });
+    }
+  }
+
+  private void writeNoise(
+      final HeightmapView view, final Heightmap map,
+      final int minX, final int maxX, final int minY, final int maxY, final int lod) {
+    if (lod == 0) {
+      this.writeNoise(view, map, minX, maxX, minY, maxY);
+      return;
+    }
+    // the view is filled one lattice cell at a time so that each corner is only evaluated once per cell
+    final int s = 1 << lod;
+    for (int lX = minX >> lod << lod; lX < maxX; lX += s) {
+      for (int lY = minY >> lod << lod; lY < maxY; lY += s) {
+        final float a = view.getNoise(lX, lY);
+        final float b = view.getNoise(lX + s, lY);
+        final float c = view.getNoise(lX, lY + s);
+        final float d = view.getNoise(lX + s, lY + s);
+        for (int x = Math.max(lX, minX); x < Math.min(lX + s, maxX); x++) {
+          for (int y = Math.max(lY, minY); y < Math.min(lY + s, maxY); y++) {
+            map.set(x, y, view.interpolate(x, y, x - lX, y - lY, s, a, b, c, d));
+          }
+        }
+      }
+    }
+  }
+
+  private void writeNoise(
+      final HeightmapView view, final Heightmap map, final int minX, final int maxX, final int minY, final int maxY) {
+    for (int x = minX; x < maxX; x++) {
+      for (int y = minY; y < maxY; y++) {
+        map.set(x, y, view.getNoise(x, y));
+      }
+    }
+  }
+
+  // every block is written independently, so splitting them up cannot change the output
+  private void forEachBand(final int n, final BandWriter writer) {
+    final int threads = Math.min(this.config.getMapThreadCount(), n);
+    if (threads < 2) {
+      writer.write(0, n);
+      return;
+    }
+    final ForkJoinPool pool = this.getPool(threads);
+    final int bands = threads * 4;
+    final List<Callable<Void>> tasks = new ArrayList<>(bands);
+    for (int i = 0; i < bands; i++) {
+      final int min = n * i / bands;
+      final int max = n * (i + 1) / bands;
+      tasks.add(() -> {
+        writer.write(min, max);
+        return null;
+      });
+    }
+    try {
+      for (final Future<Void> f : pool.invokeAll(tasks)) {
+        f.get();
       }
+    } catch (final ExecutionException | InterruptedException e) {
+      throw new IllegalStateException("Error generating heightmap", e);
     }
   }
 
-  private FastNoise createGenerator() {
+  // the pool is shared with refinement passes running in the background
+  private synchronized ForkJoinPool getPool(final int threads) {
+    if (this.pool == null || this.pool.getParallelism() != threads) {
+      if (this.pool != null) {
+        this.pool.shutdown();
+      }
+      this.pool = new ForkJoinPool(threads);
+    }
+    return this.pool;
+  }
+
+  private NoiseDescriptor createDescriptor() {
     final NoiseDescriptor cfg = new NoiseDescriptor()
         .noise(NoiseType.MULTI)
         .multi(MultiType.SUM)
         .noiseLookup(this.primaryMap(), this.grooves());
     if (this.tracker.isMountains()) {
-      return cfg.scalar(HeightmapGenerator::scaleMountains).generate();
+      return cfg.scalar(HeightmapGenerator::scaleMountains);
     }
-    return cfg.generate();
+    return cfg;
   }
 
   private NoiseDescriptor primaryMap() {
@@ -117,4 +311,9 @@ public class HeightmapGenerator {
     }
     return (float) (((0.000000002 * Math.pow(y, 6)) / 6) + (9 * Math.sqrt(y)));
   }
+
+  @FunctionalInterface
+  private interface BandWriter {
+    void write(final int min, final int max);
+  }
 }
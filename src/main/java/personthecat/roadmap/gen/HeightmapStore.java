@@ -0,0 +1,109 @@
+package personthecat.roadmap.gen;
+
+import org.apache.commons.io.FileUtils;
+import personthecat.roadmap.data.StripedLruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Noise samples saved to the disk, one memory-mapped page of 512x512 blocks per file. Every page belongs to a single
+// terrain, so nothing is ever invalidated; changing the terrain just moves on to a different directory. Samples are
+// stored with their bits inverted so that the zeroes of a new page read back as NaN, i.e. not yet sampled. Only so
+// many pages stay mapped at once, and only the most recently opened terrains are kept on the disk.
+public class HeightmapStore {
+  private static final String TEMP_SAVE_DIR = "heightmaps";
+  private static final String EXTENSION = "hm";
+  private static final int SHIFT = 9;
+  private static final int PAGE = 1 << SHIFT;
+  private static final int MASK = PAGE - 1;
+  private static final long PAGE_BYTES = (long) PAGE * PAGE * Float.BYTES;
+  private static final int MAX_PAGES = 64; // 256 MB mapped; dropped pages are unmapped once collected
+  private static final int MAX_TERRAINS = 4;
+
+  private final StripedLruCache<MappedByteBuffer> pages = new StripedLruCache<>(MAX_PAGES);
+  private final String key;
+  private final File dir;
+  private volatile boolean failed;
+
+  public HeightmapStore(final String key) {
+    this(new File(TEMP_SAVE_DIR), key);
+  }
+
+  HeightmapStore(final File root, final String key) {
+    this.key = key;
+    this.dir = new File(root, key);
+    this.deleteOldTerrains();
+  }
+
+  public String getKey() {
+    return this.key;
+  }
+
+  public float get(final int x, final int y) {
+    final MappedByteBuffer page = this.getPage(x, y);
+    if (page == null) {
+      return Float.NaN;
+    }
+    return Float.intBitsToFloat(~page.getInt(indexOf(x, y)));
+  }
+
+  public void put(final int x, final int y, final float n) {
+    final MappedByteBuffer page = this.getPage(x, y);
+    if (page != null) {
+      page.putInt(indexOf(x, y), ~Float.floatToRawIntBits(n));
+    }
+  }
+
+  private static int indexOf(final int x, final int y) {
+    return ((x & MASK) << SHIFT | (y & MASK)) * Float.BYTES;
+  }
+
+  private MappedByteBuffer getPage(final int x, final int y) {
+    if (this.failed) {
+      return null;
+    }
+    return this.pages.get(StripedLruCache.key(x >> SHIFT, y >> SHIFT), () -> this.map(x >> SHIFT, y >> SHIFT));
+  }
+
+  // marks this terrain as the most recent and deletes everything older than the last few
+  private void deleteOldTerrains() {
+    if (this.dir.exists() && !this.dir.setLastModified(System.currentTimeMillis())) {
+      System.err.println("Error touching heightmap directory " + this.dir);
+    }
+    final File[] dirs = this.dir.getParentFile().listFiles(f -> f.isDirectory() && !f.equals(this.dir));
+    if (dirs == null || dirs.length < MAX_TERRAINS) {
+      return;
+    }
+    Arrays.sort(dirs, Comparator.comparingLong(File::lastModified).reversed());
+    for (int i = MAX_TERRAINS - 1; i < dirs.length; i++) {
+      try {
+        FileUtils.forceDelete(dirs[i]);
+      } catch (final IOException e) {
+        System.err.println("Error deleting old heightmap directory " + dirs[i]);
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private MappedByteBuffer map(final int pX, final int pY) {
+    final File f = new File(this.dir, String.format("%sx%s.%s", pX, pY, EXTENSION));
+    try {
+      FileUtils.forceMkdir(this.dir);
+      try (final FileChannel fc = FileChannel.open(f.toPath(),
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        return fc.map(FileChannel.MapMode.READ_WRITE, 0, PAGE_BYTES);
+      }
+    } catch (final IOException e) {
+      // stop trying so that one bad disk doesn't fail every sample after it
+      System.err.println("Error mapping heightmap page " + f + ". Samples will no longer be saved.");
+      e.printStackTrace();
+      this.failed = true;
+      return null;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package personthecat.roadmap.gen;
+
+import personthecat.fastnoise.FastNoise;
+import personthecat.fastnoise.data.NoiseDescriptor;
+import personthecat.roadmap.util.Utils;
+
+import java.util.Arrays;
+
+// A snapshot of the terrain as it was when the generator was last reloaded. Views never change once published, so any
+// number of threads may sample from one while the UI keeps regenerating, and each thread evaluates its own noise.
+public class HeightmapView {
+  private final ThreadLocal<FastNoise> noise;
+  private final SampleCache cache;
+  private final HeightmapStore store;
+  private final Heightmap map;
+  private final int terrainKey;
+  private final float surfaceScale;
+  private final float maxLodError;
+  private final int coarseLod;
+
+  HeightmapView(
+      final NoiseDescriptor descriptor, final SampleCache cache, final HeightmapStore store, final Heightmap map,
+      final int terrainKey, final float surfaceScale, final float maxLodError, final int coarseLod) {
+    this(ThreadLocal.withInitial(descriptor::generate),
+        cache, store, map, terrainKey, surfaceScale, maxLodError, coarseLod);
+  }
+
+  private HeightmapView(
+      final ThreadLocal<FastNoise> noise, final SampleCache cache, final HeightmapStore store, final Heightmap map,
+      final int terrainKey, final float surfaceScale, final float maxLodError, final int coarseLod) {
+    this.noise = noise;
+    this.cache = cache;
+    this.store = store;
+    this.map = map;
+    this.terrainKey = terrainKey;
+    this.surfaceScale = surfaceScale;
+    this.maxLodError = maxLodError;
+    this.coarseLod = coarseLod;
+  }
+
+  // the same terrain, reading through a different on-screen map
+  HeightmapView withMap(final Heightmap map) {
+    return new HeightmapView(
+        this.noise, this.cache, this.store, map, this.terrainKey, this.surfaceScale, this.maxLodError, this.coarseLod);
+  }
+
+  public int getTerrainKey() {
+    return this.terrainKey;
+  }
+
+  public float sample(final int x, final int y) {
+    if (this.map != null) {
+      final float n = this.map.sample(x, y, this.terrainKey);
+      if (n == n) {
+        return n;
+      }
+    }
+    if (this.cache == null) {
+      return this.getNoise(x, y);
+    }
+    final float[] tile = this.cache.getTile(x, y);
+    final int i = SampleCache.indexOf(x, y);
+    final float n = tile[i];
+    if (n == n) {
+      return n;
+    }
+    return tile[i] = this.getNoise(x, y);
+  }
+
+  // Interpolates between noise on a lattice spaced 2^lod blocks apart, for callers that only need the general shape.
+  public float sample(final int x, final int y, final int lod) {
+    final int lX = x >> lod << lod;
+    final int lY = y >> lod << lod;
+    if (x == lX && y == lY) {
+      return this.sample(x, y);
+    }
+    final int s = 1 << lod;
+    final float a = this.sample(lX, lY);
+    final float b = this.sample(lX + s, lY);
+    final float c = this.sample(lX, lY + s);
+    final float d = this.sample(lX + s, lY + s);
+    return this.interpolate(x, y, x - lX, y - lY, s, a, b, c, d);
+  }
+
+  public float sampleCoarse(final int x, final int y) {
+    return this.sample(x, y, this.coarseLod);
+  }
+
+  // Samples w x h blocks spaced stride apart into out, column by column, as sample() would.
+  public void sampleRect(final int x, final int y, final int w, final int h, final int stride, final float[] out) {
+    Arrays.fill(out, 0, w * h, Float.NaN);
+    if (this.map != null) {
+      this.map.read(x, y, w, h, stride, this.terrainKey, out);
+    }
+    for (int i = 0; i < w; i++) {
+      final int sX = x + i * stride;
+      float[] tile = null;
+      int tY = 0;
+      for (int j = 0; j < h; j++) {
+        final int o = i * h + j;
+        if (out[o] == out[o]) {
+          continue;
+        }
+        final int sY = y + j * stride;
+        if (this.cache == null) {
+          out[o] = this.getNoise(sX, sY);
+          continue;
+        }
+        // consecutive samples usually share a tile, so only look one up when leaving the last
+        if (tile == null || sY >> SampleCache.SHIFT != tY) {
+          tile = this.cache.getTile(sX, sY);
+          tY = sY >> SampleCache.SHIFT;
+        }
+        final int c = SampleCache.indexOf(sX, sY);
+        final float n = tile[c];
+        out[o] = n == n ? n : (tile[c] = this.getNoise(sX, sY));
+      }
+    }
+  }
+
+  public void sampleCoarseRect(
+      final int x, final int y, final int w, final int h, final int stride, final float[] out) {
+    if (this.coarseLod == 0) {
+      this.sampleRect(x, y, w, h, stride, out);
+      return;
+    }
+    for (int i = 0; i < w; i++) {
+      for (int j = 0; j < h; j++) {
+        out[i * h + j] = this.sample(x + i * stride, y + j * stride, this.coarseLod);
+      }
+    }
+  }
+
+  float interpolate(
+      final int x, final int y, final int rX, final int rY, final int s,
+      final float a, final float b, final float c, final float d) {
+    final float min = Math.min(Math.min(a, b), Math.min(c, d));
+    final float max = Math.max(Math.max(a, b), Math.max(c, d));
+    if (max - min > this.maxLodError) {
+      return this.getNoise(x, y);
+    }
+    final float tX = (float) rX / s;
+    return Utils.lerp(Utils.lerp(a, b, tX), Utils.lerp(c, d, tX), (float) rY / s);
+  }
+
+  // noise saved by an earlier run is read back instead of being evaluated again
+  float getNoise(final int x, final int y) {
+    if (this.store == null) {
+      return this.evaluate(x, y);
+    }
+    float n = this.store.get(x, y);
+    if (n != n) {
+      n = this.evaluate(x, y);
+      this.store.put(x, y, n);
+    }
+    return n;
+  }
+
+  private float evaluate(final int x, final int y) {
+    final float n = this.noise.get().getNoiseScaled(x, y);
+    return n > 0 ? n * this.surfaceScale : n;
+  }
+}
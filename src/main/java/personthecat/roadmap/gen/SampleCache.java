@@ -0,0 +1,34 @@
+package personthecat.roadmap.gen;
+
+import personthecat.roadmap.data.StripedLruCache;
+
+import java.util.Arrays;
+
+// Keeps noise samples outside of the viewport, since searches and smoothness checks revisit the same blocks many
+// times and from several threads. Tiles are split across independently locked stripes, and each cell is filled in
+// on first use. Noise is deterministic, so two threads racing to fill the same cell will always agree.
+public class SampleCache {
+  static final int SHIFT = 4;
+  private static final int TILE = 1 << SHIFT;
+  private static final int MASK = TILE - 1;
+
+  private final StripedLruCache<float[]> tiles;
+
+  public SampleCache(final int capacity) {
+    this.tiles = new StripedLruCache<>(capacity);
+  }
+
+  public float[] getTile(final int x, final int y) {
+    return this.tiles.get(StripedLruCache.key(x >> SHIFT, y >> SHIFT), SampleCache::newTile);
+  }
+
+  public static int indexOf(final int x, final int y) {
+    return (x & MASK) << SHIFT | (y & MASK);
+  }
+
+  private static float[] newTile() {
+    final float[] samples = new float[TILE * TILE];
+    Arrays.fill(samples, Float.NaN);
+    return samples;
+  }
+}
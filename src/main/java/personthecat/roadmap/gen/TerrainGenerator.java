@@ -7,10 +7,13 @@ import personthecat.roadmap.gen.road.RoadMap;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.Random;
+import java.util.function.BooleanSupplier;
 
 public class TerrainGenerator {
   private static final int MIN_COLOR_VALUE = 1;
+  private static final int PREVIEW_LOD = 3;
 
   private final HeightmapGenerator mapGenerator;
   private final RoadImageGenerator roadGenerator;
@@ -19,6 +22,7 @@ public class TerrainGenerator {
   private final Random rand;
   private BufferedImage buffer;
   private Graphics2D graphics;
+  private boolean previewing;
 
   public TerrainGenerator(final Tracker tracker, final Config config) {
     this.tracker = tracker;
@@ -46,11 +50,63 @@ public class TerrainGenerator {
     return this.buffer;
   }
 
-  public BufferedImage generate(final boolean reload) {
+  public synchronized BufferedImage generate(final boolean reload) {
     final int w = this.config.getChunkWidth() << 4;
     final int h = this.config.getChunkHeight() << 4;
-    final float[][] map = this.mapGenerator.generate(h, w, reload);
-    final BufferedImage overlay = this.roadGenerator.getRoadOverlay(h, w, reload);
+    // a preview that was never refined has nothing to carry over
+    final boolean full = reload || this.previewing;
+    this.previewing = false;
+    final Heightmap map = this.mapGenerator.generate(h, w, full);
+    final BufferedImage overlay = this.roadGenerator.getRoadOverlay(h, w, full);
+    return this.draw(map, overlay, full);
+  }
+
+  // Marks the current image as out of date until a preview replaces it, so that nothing is drawn on top of it.
+  public synchronized void beginPreview() {
+    this.previewing = true;
+  }
+
+  // May be called from any thread. Draws a rough map without roads into a new image, to be replaced by refine() and
+  // install() as better maps are ready. Returns null if cancelled.
+  public synchronized BufferedImage generatePreview(final BooleanSupplier cancelled) {
+    if (cancelled.getAsBoolean()) {
+      return null;
+    }
+    final int w = this.config.getChunkWidth() << 4;
+    final int h = this.config.getChunkHeight() << 4;
+    final int lod = Math.max(PREVIEW_LOD, this.config.getMapLod());
+    final Heightmap map = this.mapGenerator.generate(h, w, true, lod);
+    this.previewing = true;
+    return this.draw(map, new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB), true);
+  }
+
+  // May be called from any thread. Returns null if cancelled.
+  public Heightmap refine(final int xOffset, final int yOffset, final int lod, final BooleanSupplier cancelled) {
+    final int w = this.config.getChunkWidth() << 4;
+    final int h = this.config.getChunkHeight() << 4;
+    return this.mapGenerator.prepare(this.mapGenerator.getView(), xOffset, yOffset, w, h, lod, cancelled);
+  }
+
+  // May be called from any thread. Draws into a new image, or returns null if cancelled or the map no longer fits.
+  public synchronized BufferedImage install(final Heightmap map, final boolean roads, final BooleanSupplier cancelled) {
+    if (cancelled.getAsBoolean()) {
+      return null;
+    }
+    final int w = this.config.getChunkWidth() << 4;
+    final int h = this.config.getChunkHeight() << 4;
+    if (map.getWidth() != w || map.getHeight() != h || !this.mapGenerator.install(map)) {
+      return null;
+    }
+    final BufferedImage overlay = roads
+        ? this.roadGenerator.getRoadOverlay(h, w, true)
+        : new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    this.previewing = !roads;
+    return this.draw(map, overlay, true);
+  }
+
+  private BufferedImage draw(final Heightmap map, final BufferedImage overlay, final boolean reload) {
+    final int w = map.getWidth();
+    final int h = map.getHeight();
     if (this.tracker.isSideView()) {
       this.resetBuffer(h, w, reload, true);
       this.drawSideView(map, this.buffer, overlay);
@@ -71,27 +127,27 @@ public class TerrainGenerator {
     }
   }
 
-  private void drawSideView(final float[][] map, final BufferedImage image, final BufferedImage overlay) {
+  private void drawSideView(final Heightmap map, final BufferedImage image, final BufferedImage overlay) {
     int o = 0;
-    for (int y = map[0].length - 1; y >= 0; y--) {
+    for (int y = map.getHeight() - 1; y >= 0; y--) {
       this.drawSlice(image, map, y, o++, overlay);
     }
     this.drawBackground(image);
   }
 
   private void drawSlice(
-      final BufferedImage image, final float[][] map, final int y, final int o, final BufferedImage overlay) {
-    for (int x = 0; x < map.length; x++) {
-      final int n = (int) map[x][y];
+      final BufferedImage image, final Heightmap map, final int y, final int o, final BufferedImage overlay) {
+    for (int x = 0; x < map.getWidth(); x++) {
+      final int n = (int) map.get(x, y);
       final int a = n + (int) ((double) o * this.tracker.getSideViewAngle());
       final int r = overlay.getRGB(x, y);
       final int base = r == 0 ? this.getColor(n).getRGB() : r;
       final int c = this.darken(base, o / 32);
-      for (int h = Math.min(a, map[0].length - 1); h >= 0; h--) {
-        if (image.getRGB(x, map[0].length - h - 1) != 0) {
+      for (int h = Math.min(a, map.getHeight() - 1); h >= 0; h--) {
+        if (image.getRGB(x, map.getHeight() - h - 1) != 0) {
           break;
         }
-        image.setRGB(x, map[0].length - h - 1, c);
+        image.setRGB(x, map.getHeight() - h - 1, c);
       }
     }
   }
@@ -108,27 +164,30 @@ public class TerrainGenerator {
     }
   }
 
-  private void drawMap(final float[][] map, final BufferedImage image, final BufferedImage overlay) {
+  private void drawMap(final Heightmap map, final BufferedImage image, final BufferedImage overlay) {
     this.colorize(map, image);
     this.drawOverlay(image, overlay);
     this.drawGridLines(image);
   }
 
+  // both images are TYPE_INT_ARGB, so their pixels can be copied straight across
   private void drawOverlay(final BufferedImage image, final BufferedImage overlay) {
-    for (int x = 0; x < image.getWidth(); x++) {
-      for (int y = 0; y < image.getHeight(); y++) {
-        final int c = overlay.getRGB(x, y);
-        if (c != 0) {
-          image.setRGB(x, y, c);
-        }
+    final int[] src = ((DataBufferInt) overlay.getRaster().getDataBuffer()).getData();
+    final int[] dst = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    for (int i = 0; i < dst.length; i++) {
+      final int c = src[i];
+      if (c != 0) {
+        dst[i] = c;
       }
     }
   }
 
-  private void colorize(final float[][] map, final BufferedImage image) {
-    for (int x = 0; x < map.length; x++) {
-      for (int y = 0; y < map[0].length; y++) {
-        image.setRGB(x, y, this.getColor(map[x][y]).getRGB());
+  private void colorize(final Heightmap map, final BufferedImage image) {
+    final int[] dst = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    final int w = image.getWidth();
+    for (int y = 0; y < map.getHeight(); y++) {
+      for (int x = 0; x < map.getWidth(); x++) {
+        dst[y * w + x] = this.getColor(map.get(x, y)).getRGB();
       }
     }
   }
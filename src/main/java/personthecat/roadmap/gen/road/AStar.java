@@ -1,197 +1,421 @@
 package personthecat.roadmap.gen.road;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import personthecat.roadmap.Config;
-import personthecat.roadmap.gen.HeightmapGenerator;
+import personthecat.roadmap.data.OpenList;
+import personthecat.roadmap.data.OpenListType;
+import personthecat.roadmap.data.PathBuffer;
+import personthecat.roadmap.gen.HeightmapView;
 import personthecat.roadmap.data.Point;
 import personthecat.roadmap.data.SmoothnessGraph;
-
-import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.Comparator;
-import java.util.List;
-import java.util.PriorityQueue;
+import personthecat.roadmap.util.Utils;
 
 public class AStar {
-  protected final PriorityQueue<Candidate> openList;
-  protected final BitSet closedSet;
-  protected final Long2ObjectMap<Cell> cellDetails;
-  protected HeightmapGenerator gen;
+  protected static final int FORWARD = 0;
+  protected static final int BACKWARD = 1;
+
+  protected final SearchGrid grid;
+  protected final PathBuffer path = new PathBuffer();
+  protected final PathBuffer dense = new PathBuffer();
+  protected final CorridorSearch corridors;
+  protected final CostField costs;
+  protected boolean cacheCosts;
+  protected Corridor corridor;
+  protected final OpenList[] openLists = new OpenList[2];
+  protected OpenListType openListType;
+  protected float bucketWidth;
+  protected HeightmapView gen;
   protected SmoothnessGraph smoothness;
   protected final Config config;
-  protected Point found;
+  protected int head;
+  protected int reverseHead;
+  protected int reverseX;
+  protected int reverseY;
+  protected SearchListener listener;
+  protected final SearchStats stats = new SearchStats();
+  protected boolean exhausted;
+  protected float weight;
+  protected long deadline;
+  protected int closest;
+  protected double closestH;
+  protected int expansions;
+  protected int reopens;
+  protected int peakOpen;
+  protected int samples;
+  protected int sdLookups;
 
   public AStar(final Config config, final SmoothnessGraph smoothness) {
-    this.openList = new PriorityQueue<>(Comparator.comparingDouble(c -> c.priority));
-    this.closedSet = new BitSet(RoadRegion.LEN / 2 * RoadRegion.LEN / 2);
-    this.cellDetails = new Long2ObjectOpenHashMap<>(Road.MAX_DISTANCE);
+    this.grid = new SearchGrid();
+    this.corridors = new CorridorSearch(config, smoothness);
+    this.costs = new CostField(config, smoothness);
     this.smoothness = smoothness;
     this.config = config;
   }
 
-  public void reset(final HeightmapGenerator gen) {
-    this.openList.clear();
-    this.closedSet.clear();
-    this.cellDetails.clear();
+  public void reset(final HeightmapView gen) {
     this.gen = gen;
+    this.cacheCosts = this.config.isCacheTraversalCosts();
+    if (this.cacheCosts) {
+      this.costs.reset(gen);
+    } else {
+      this.costs.clear();
+    }
+  }
+
+  public void setListener(final SearchListener listener) {
+    this.listener = listener;
+  }
+
+  private void updateOpenLists() {
+    final OpenListType type = this.config.getOpenListType();
+    final float width = this.config.getBucketWidth();
+    if (this.openLists[FORWARD] == null || type != this.openListType || width != this.bucketWidth) {
+      this.openLists[FORWARD] = type.create(this.config, SearchGrid.CAPACITY);
+      this.openLists[BACKWARD] = null;
+      this.openListType = type;
+      this.bucketWidth = width;
+    } else {
+      this.openLists[FORWARD].clear();
+      if (this.openLists[BACKWARD] != null) {
+        this.openLists[BACKWARD].clear();
+      }
+    }
+  }
+
+  // only bidirectional searches ever queue anything backward
+  private OpenList getBackwardList() {
+    if (this.openLists[BACKWARD] == null) {
+      this.openLists[BACKWARD] = this.openListType.create(this.config, SearchGrid.CAPACITY);
+    }
+    return this.openLists[BACKWARD];
+  }
+
+  public final PathBuffer search(final RoadRegion region, final Point src, final Destination dest) {
+    final boolean record = this.listener != null && this.config.isLogSearchStats();
+    final long start = record ? System.nanoTime() : 0;
+    this.exhausted = false;
+    this.expansions = 0;
+    this.reopens = 0;
+    this.peakOpen = 0;
+    this.samples = 0;
+    this.sdLookups = 0;
+    this.weight = this.config.getSearchWeight();
+    final long limit = this.config.getSearchTimeLimit() * 1_000_000L;
+    this.deadline = this.config.isSearchTimed() ? System.nanoTime() + limit : Long.MAX_VALUE;
+    this.closest = -1;
+    this.closestH = Double.MAX_VALUE;
+    final PathBuffer path = this.route(region, src, dest);
+    if (record) {
+      final SearchStats.Outcome outcome = path != null
+          ? (this.exhausted ? SearchStats.Outcome.PARTIAL : SearchStats.Outcome.FOUND)
+          : this.exhausted ? SearchStats.Outcome.EXHAUSTED : SearchStats.Outcome.NO_PATH;
+      this.stats.set(outcome, this.expansions, this.reopens, this.peakOpen, this.samples, this.sdLookups,
+          System.nanoTime() - start);
+      this.listener.onSearchCompleted(this.stats);
+    }
+    return path;
   }
 
-  public final List<Point> search(final Point src, final Destination dest) {
-//    sw.logStart("generating road: %s -> %s, d = %.2f", src, dest, d);
-//    sw.logEnd("generated road: %s -> %s, len = %s", src, dest, len);
-//    sw.logEnd("generated nothing: %s -> %s, len = %s", src, dest, len);
-//    sw.logAverage("path avg");
+  private PathBuffer route(final RoadRegion region, final Point src, final Destination dest) {
+    this.corridor = null;
+    if (dest instanceof Point p) {
+      if (this.config.isHierarchicalSearch() && this.corridors.covers(region.getGraph(), src, p)) {
+        // a null corridor leaves the fine search unrestricted, since coarse heights can miss a narrow pass
+        this.corridor = this.corridors.find(region.getGraph(), this.gen, src, p);
+      }
+      if (this.config.isBidirectionalSearch()) {
+        return this.doBidirectionalSearch(src, p);
+      }
+    }
     return this.doSearch(src, dest);
   }
 
-  protected List<Point> doSearch(final Point src, final Destination dest) {
-    int x = src.x;
-    int y = src.y;
-    float n = this.gen.sample(x, y);
+  protected PathBuffer doSearch(final Point src, final Destination dest) {
+    this.updateOpenLists();
+    this.grid.reset(src.x, src.y);
+    this.open(FORWARD, src.x, src.y);
 
-    this.setDetails(x, y, new Cell(x, y, 0, 0));
-    this.open(0.0, x, y, n);
+    int len = 0;
+    while (this.hasNext(FORWARD) && this.hasBudget(len++)) {
+      if (this.expand(FORWARD, dest)) {
+        return this.tracePath();
+      }
+    }
+    this.exhausted = this.hasNext(FORWARD);
+    return this.exhausted ? this.getClosestPath(dest) : null;
+  }
+
+  // Searches from both ends at once and joins the paths wherever one side reaches a cell seen by the other.
+  protected PathBuffer doBidirectionalSearch(final Point src, final Point dest) {
+    this.updateOpenLists();
+    this.grid.reset(src.x, src.y);
+    this.reverseX = (dest.x - src.x) & 1;
+    this.reverseY = (dest.y - src.y) & 1;
+    if (this.grid.indexOf(dest.x, dest.y) < 0) {
+      return this.doSearch(src, dest);
+    }
+    this.getBackwardList();
+    this.open(FORWARD, src.x, src.y);
+    this.open(BACKWARD, dest.x, dest.y);
 
     int len = 0;
-    while (this.hasNext() && len++ < Road.MAX_LENGTH) {
-      final Candidate c = this.next();
-      x = c.x;
-      y = c.y;
-      n = c.n;
-      this.close(x, y);
-
-      if (this.checkDirection(dest, n, 2, x, y, x - 2, y)
-          || this.checkDirection(dest, n, 2, x, y, x + 2, y)
-          || this.checkDirection(dest, n, 2, x, y, x , y + 2)
-          || this.checkDirection(dest, n, 2, x, y, x, y - 2)
-          || this.checkDirection(dest, n, 2.83, x, y, x - 2, y + 2)
-          || this.checkDirection(dest, n, 2.83, x, y, x - 2, y - 2)
-          || this.checkDirection(dest, n, 2.83, x, y, x + 2, y + 2)
-          || this.checkDirection(dest, n, 2.83, x, y, x + 2, y - 2)) {
+    while (this.hasBudget(len++)) {
+      final int f = this.openLists[FORWARD].size();
+      final int b = this.openLists[BACKWARD].size();
+      if (f == 0 || b == 0) { // either end is walled off
+        return null;
+      }
+      final int side = f <= b ? FORWARD : BACKWARD;
+      if (this.expand(side, side == FORWARD ? dest : src)) {
         return this.tracePath();
       }
     }
-    return null;
+    this.exhausted = true;
+    return this.getClosestPath(dest);
+  }
+
+  private boolean hasBudget(final int len) {
+    if (len >= Road.MAX_LENGTH) {
+      return false;
+    }
+    // the clock is only read every so often to keep it out of the hot loop
+    return this.deadline == Long.MAX_VALUE || (len & 63) != 0 || System.nanoTime() < this.deadline;
   }
 
-  private Cell getDetails(final int x, final int y) {
-    return this.cellDetails.get((((long) x) << 32) | (y & 0xFFFFFFFFL));
+  // Anytime searches settle for the closest approach to a fixed destination once they run out of budget.
+  private PathBuffer getClosestPath(final Destination dest) {
+    if (!this.config.isAnytimeSearch() || !(dest instanceof Point) || this.closest < 0) {
+      return null;
+    }
+    this.setHeads(FORWARD, this.closest, -1);
+    final PathBuffer path = this.tracePath();
+    final int last = path.size() - 1;
+    final double d = Utils.distance(path.getX(last), path.getY(last), path.getX(0), path.getY(0));
+    return d >= this.config.getMinRoadLength() ? path : null;
+  }
+
+  private void open(final int side, final int x, final int y) {
+    final int i = this.grid.indexOf(x, y);
+    this.grid.visit(i, side, i, 0, 0, this.gen.sample(x, y));
+    this.samples++;
+    this.openLists[side].offer(i, 0);
   }
 
-  private void setDetails(final int x, final int y, final Cell cell) {
-    this.cellDetails.put((((long) x) << 32) | (y & 0xFFFFFFFFL), cell);
+  private boolean hasNext(final int side) {
+    return !this.openLists[side].isEmpty();
   }
 
-  private void open(final double priority, final int x, final int y, final float n) {
-    this.openList.offer(new Candidate(priority, x, y, n));
+  private boolean expand(final int side, final Destination dest) {
+    final int i = this.openLists[side].poll();
+    final int x = this.x(i, side);
+    final int y = this.y(i, side);
+    final float n = this.grid.getN(i);
+    this.grid.close(i, side);
+    final OpenList backward = this.openLists[BACKWARD];
+    final int open = this.openLists[FORWARD].size() + (backward != null ? backward.size() : 0) + 1;
+    if (open > this.peakOpen) this.peakOpen = open;
+    this.expansions++;
+
+    final int s = this.getStride(dest, x, y, n);
+    return this.step(dest, n, s, side, i, x, y, -1, 0)
+        || this.step(dest, n, s, side, i, x, y, 1, 0)
+        || this.step(dest, n, s, side, i, x, y, 0, 1)
+        || this.step(dest, n, s, side, i, x, y, 0, -1)
+        || this.step(dest, n, s, side, i, x, y, -1, 1)
+        || this.step(dest, n, s, side, i, x, y, -1, -1)
+        || this.step(dest, n, s, side, i, x, y, 1, 1)
+        || this.step(dest, n, s, side, i, x, y, 1, -1);
   }
 
-  private boolean hasNext() {
-    return !this.openList.isEmpty();
+  private boolean step(Destination dest, float n, int s, int side, int i, int x, int y, int dX, int dY) {
+    if (s > Road.STEP && !this.canStride(n, s, x, y, dX, dY)) {
+      s = Road.STEP;
+    }
+    final double d = dX == 0 || dY == 0 ? s : s == Road.STEP ? 2.83 : s * 1.415;
+    return this.checkDirection(dest, n, d, s, side, i, x + dX * s, y + dY * s);
   }
 
-  private Candidate next() {
-    return this.openList.poll();
+  // Long strides are only taken on gentle terrain well away from the destination and any cutoffs.
+  private int getStride(final Destination dest, final int x, final int y, final float n) {
+    final int max = this.config.getMaxSearchStride();
+    if (max <= Road.STEP || n < this.config.getShorelineCutoff() || n > this.config.getMountainCutoff()) {
+      return Road.STEP;
+    }
+    this.sdLookups++;
+    if (this.smoothness.getSd(this.gen, x, y) > this.config.getStrideSmoothness()) {
+      return Road.STEP;
+    }
+    return dest.distance(x, y, max * 2) < max * 2 ? Road.STEP : max;
   }
 
-  private void close(final int x, final int y) {
-    final int xO = RoadRegion.absToRel(x + RoadRegion.OFFSET) / 2;
-    final int yO = RoadRegion.absToRel(y + RoadRegion.OFFSET) / 2;
-    this.closedSet.set(xO * (RoadRegion.LEN / 2) + yO);
+  // Every cell a stride skips over ends up in the road, so each one has to be a legal step from the last.
+  private boolean canStride(final float n, final int s, final int x, final int y, final int dX, final int dY) {
+    final int minCutoff = this.config.getShorelineCutoff();
+    final int maxCutoff = this.config.getMountainCutoff();
+    float last = n;
+    for (int k = Road.STEP; k <= s; k += Road.STEP) {
+      final float h = this.sampleHeight(x + dX * k, y + dY * k);
+      if (h < 0 || Math.abs(last - h) >= 2 || (k < s && (h < minCutoff || h > maxCutoff))) {
+        return false;
+      }
+      last = h;
+    }
+    return true;
   }
 
-  private boolean isClosed(final int x, final int y) {
-    final int xO = RoadRegion.absToRel(x + RoadRegion.OFFSET) / 2;
-    final int yO = RoadRegion.absToRel(y + RoadRegion.OFFSET) / 2;
-    return this.closedSet.get(xO * (RoadRegion.LEN / 2) + yO);
+  private float sampleHeight(final int x, final int y) {
+    final CostField.Tile tile = this.cacheCosts ? this.costs.getTile(x, y) : null;
+    if (tile != null) {
+      return this.costs.getHeight(tile, CostField.indexOf(x, y), x, y);
+    }
+    this.samples++;
+    return this.gen.sample(x, y);
   }
 
-  private boolean checkDirection(Destination dest, float sH, double d, int pX, int pY, int x, int y) {
+  private boolean checkDirection(Destination dest, float sH, double d, int s, int side, int p, int x, int y) {
+    final int i = this.grid.indexOf(x, y);
+    if (i < 0 || (this.corridor != null && !this.corridor.contains(x, y))) { // outside of the search window
+      return false;
+    }
+    final int owner = this.grid.getSide(i);
+    if (owner >= 0 && owner != side) { // met the other search
+      return this.join(sH, s, side, p, i);
+    }
     final double h = dest.distance(x, y, 2);
     if (h < 2) {
-      this.setParentIndex(x, y, pX, pY);
-      this.found = new Point(x, y);
+      this.grid.setParent(i, p);
+      this.setHeads(side, i, -1);
       return true;
     }
-    if (this.isClosed(x, y)) {
+    if (this.grid.isClosed(i, side)) {
       return false;
     }
-    final float eH = this.gen.sample(x, y);
+    final CostField.Tile tile = this.cacheCosts ? this.costs.getTile(x, y) : null;
+    final int c = CostField.indexOf(x, y);
+    final float eH;
+    if (tile != null) {
+      eH = this.costs.getHeight(tile, c, x, y);
+    } else {
+      eH = this.gen.sample(x, y);
+      this.samples++;
+    }
     if (eH < 0) {
       return false;
     }
-    final float dH = Math.abs(sH - eH);
+    final float dH = s == Road.STEP ? Math.abs(sH - eH) : Math.abs(sH - eH) * Road.STEP / s;
     if (dH < 2) {
-      final Cell cell = this.getDetails(x, y);
-      final double g = getG(cell) + d;
-      final double r = getCurve(x, y);
-      final double sd = this.smoothness.getSd(this.gen, x, y);
-      double f = g + h + r + (dH * dH) * 3 + sd * 2;
-      final int minCutoff = this.config.getShorelineCutoff();
-      final int maxCutoff = this.config.getMountainCutoff();
-      if (eH < minCutoff) {
-        f += (minCutoff - eH) * (minCutoff - eH);
-      } else if (eH > maxCutoff) {
-        f += (eH - maxCutoff) * (eH - maxCutoff);
+      final boolean seen = owner == side;
+      final double g = (seen ? this.grid.getG(i) : 0) + d;
+      final double sd;
+      if (tile != null) {
+        sd = this.costs.getSd(tile, c, x, y);
+      } else {
+        sd = this.smoothness.getSd(this.gen, x, y);
+        this.sdLookups++;
       }
-      if (cell == null || cell.f > f) {
-        this.open(f, x, y, eH);
-        this.setDetails(x, y, new Cell(pX, pY, f, g));
+      final double f = addCost(this.config, g + h * this.weight, x, y, dH, sd, eH);
+      if (!seen || this.grid.getF(i) > (float) f) {
+        if (seen) this.reopens++;
+        // an already queued cell is re-keyed rather than queued twice
+        this.grid.visit(i, side, p, (float) f, (float) g, eH);
+        if (side == FORWARD && h < this.closestH) {
+          this.closest = i;
+          this.closestH = h;
+        }
+        this.openLists[side].offer(i, (float) f);
       }
     }
     return false;
   }
 
-  private void setParentIndex(final int x, final int y, final int pX, final int pY) {
-    Cell cell = this.getDetails(x, y);
-    if (cell == null) {
-      cell = new Cell();
-      this.setDetails(x, y, cell);
+  // The cell belongs to the other side, so the step onto it is judged by its height without being visited again.
+  private boolean join(final float sH, final int s, final int side, final int p, final int i) {
+    final float eH = this.grid.getN(i);
+    final float dH = s == Road.STEP ? Math.abs(sH - eH) : Math.abs(sH - eH) * Road.STEP / s;
+    if (eH < 0 || dH >= 2) {
+      return false;
     }
-    cell.pX = pX;
-    cell.pY = pY;
+    this.setHeads(side, p, i);
+    return true;
   }
 
-  protected List<Point> tracePath() {
-    int x = this.found.x;
-    int y = this.found.y;
-    Cell cell = this.getDetails(x, y);
-
-    final List<Point> path = new ArrayList<>();
-    while (!(cell.pX == x && cell.pY == y)) {
-      path.add(new Point(x, y));
-      x = cell.pX;
-      y = cell.pY;
-      cell = getDetails(x, y);
+  private void setHeads(final int side, final int own, final int other) {
+    if (side == FORWARD) {
+      this.head = own;
+      this.reverseHead = other;
+    } else {
+      this.head = other;
+      this.reverseHead = own;
     }
-    path.add(new Point(x, y));
-    return path;
   }
 
-  protected static double getG(final Cell cell) {
-    return cell != null ? cell.g : 0;
+  private int x(final int i, final int side) {
+    return side == FORWARD ? this.grid.x(i) : this.grid.x(i) + this.reverseX;
   }
 
-  protected static double getCurve(final int x, final int y) { // will take: dest, h
-    return Math.sin(x * y);
+  private int y(final int i, final int side) {
+    return side == FORWARD ? this.grid.y(i) : this.grid.y(i) + this.reverseY;
   }
 
-  private record Candidate(double priority, int x, int y, float n) {}
+  // paths run from the destination back to the source
+  protected PathBuffer tracePath() {
+    final PathBuffer path = this.path;
+    path.clear();
+    if (this.reverseHead >= 0) {
+      this.traceChain(path, this.reverseHead, BACKWARD);
+      path.reverse(0, path.size());
+    }
+    if (this.head >= 0) {
+      this.traceChain(path, this.head, FORWARD);
+    }
+    return this.config.getMaxSearchStride() > Road.STEP ? this.densify(path) : path;
+  }
 
-  private static class Cell {
-    int pX;
-    int pY;
-    double f;
-    double g;
+  // fills in the cells skipped over by long strides, or where both searches met
+  private PathBuffer densify(final PathBuffer path) {
+    final PathBuffer dense = this.dense;
+    dense.clear();
+    int pX = path.getX(0);
+    int pY = path.getY(0);
+    dense.add(pX, pY);
+    for (int i = 1; i < path.size(); i++) {
+      final int x = path.getX(i);
+      final int y = path.getY(i);
+      final int steps = Math.max(Math.abs(x - pX), Math.abs(y - pY)) / Road.STEP;
+      for (int s = 1; s < steps; s++) {
+        dense.add(pX + (x - pX) * s / steps, pY + (y - pY) * s / steps);
+      }
+      dense.add(x, y);
+      pX = x;
+      pY = y;
+    }
+    return dense;
+  }
+
+  private void traceChain(final PathBuffer path, int i, final int side) {
+    int p = this.grid.getParent(i);
+    while (p != i) {
+      path.add(this.x(i, side), this.y(i, side));
+      i = p;
+      p = this.grid.getParent(i);
+    }
+    path.add(this.x(i, side), this.y(i, side));
+  }
 
-    Cell() {}
+  protected static double getCurve(final int x, final int y) { // will take: dest, h
+    return Math.sin(x * y);
+  }
 
-    Cell(final int pX, final int pY, final double f, final double g) {
-      this.pX = pX;
-      this.pY = pY;
-      this.f = f;
-      this.g = g;
+  // The cost of stepping onto x, y, added to f one term at a time in a fixed order, so that every search pricing the
+  // same step gets exactly the same value.
+  static double addCost(Config config, double f, int x, int y, float dH, double sd, float eH) {
+    f = f + getCurve(x, y) + (dH * dH) * 3 + sd * 2;
+    final int minCutoff = config.getShorelineCutoff();
+    final int maxCutoff = config.getMountainCutoff();
+    if (eH < minCutoff) {
+      f += (minCutoff - eH) * (minCutoff - eH);
+    } else if (eH > maxCutoff) {
+      f += (eH - maxCutoff) * (eH - maxCutoff);
     }
+    return f;
   }
 }
@@ -1,12 +1,12 @@
 package personthecat.roadmap.gen.road;
 
 import personthecat.roadmap.Config;
+import personthecat.roadmap.data.PathBuffer;
 import personthecat.roadmap.data.Tracker;
-import personthecat.roadmap.gen.HeightmapGenerator;
+import personthecat.roadmap.gen.HeightmapView;
 import personthecat.roadmap.data.Point;
 
 import java.awt.Color;
-import java.util.List;
 
 public class AStarRoadGenerator extends RoadGenerator {
   private static final byte DEMO_RADIUS_0 = 3;
@@ -22,16 +22,18 @@ public class AStarRoadGenerator extends RoadGenerator {
   public AStarRoadGenerator(final RoadMap map, final Config config, final Tracker tracker) {
     super(map, config, tracker);
     this.aStar = new AStar(config, this.graph);
+    this.aStar.setListener(this.networkStats::add);
   }
 
   @Override
-  protected Road trace(HeightmapGenerator gen, Point src, Destination dest) {
+  protected Road trace(RoadRegion region, HeightmapView gen, Point src, Destination dest) {
     this.aStar.reset(gen);
-    final List<Point> path = this.aStar.search(src, dest);
-    if (path == null) {
-      return null;
-    }
-    final int l = dest.getRoadLevel();
+    final PathBuffer path = this.aStar.search(region, src, dest);
+    return path != null ? this.createRoad(path, dest.getRoadLevel()) : null;
+  }
+
+  // paths are traced from the destination back to the source, so vertices are read from the end of the buffer
+  private Road createRoad(final PathBuffer path, final int l) {
     final int color;
     final byte radius;
     switch (l) {
@@ -54,16 +56,20 @@ public class AStarRoadGenerator extends RoadGenerator {
     int maxY = Integer.MIN_VALUE;
     final int len = path.size();
     final RoadVertex[] vertices = new RoadVertex[len];
+    // the unsmoothed angles of the two vertices before this one
+    float before = 0;
+    float current = 0;
     for (int i = len - 1; i >= 0; i--) {
-      final Point p = path.get(i);
+      final int x = path.getX(i);
+      final int y = path.getY(i);
       final float theta;
       final float xAngle;
       if (i > 0 && i < len - 1) {
         // Check ahead by 2, if possible. Lazy way to get the angle over a large distance
-        final Point prev = i < len - 2 ? path.get(i + 2) : path.get(i + 1);
-        final Point next = i > 1 ? path.get(i - 2) : path.get(0); // i - 1 = 0
-        final float a1 = (float) Math.atan2(prev.y - p.y, prev.x - p.x);
-        final float a2 = (float) Math.atan2(next.y - p.y, next.x - p.x);
+        final int prev = i < len - 2 ? i + 2 : i + 1;
+        final int next = i > 1 ? i - 2 : 0; // i - 1 = 0
+        final float a1 = (float) Math.atan2(path.getY(prev) - y, path.getX(prev) - x);
+        final float a2 = (float) Math.atan2(path.getY(next) - y, path.getX(next) - x);
         final float t = a2 - a1;
         theta = t < 0 ? t + TAU : t;
         xAngle = a2;
@@ -71,12 +77,18 @@ public class AStarRoadGenerator extends RoadGenerator {
         theta = -1;
         xAngle = -1;
       }
-      if (p.x < minX) minX = p.x;
-      if (p.y < minY) minY = p.y;
-      if (p.x > maxX) maxX = p.x;
-      if (p.y > maxY) maxY = p.y;
-      final RoadVertex v = new RoadVertex(p.x, p.y, radius, color, DEMO_INTEGRITY, theta, xAngle, (short) 0);
-      vertices[path.size() - i - 1] = v;
+      if (x < minX) minX = x;
+      if (y < minY) minY = y;
+      if (x > maxX) maxX = x;
+      if (y > maxY) maxY = y;
+      final int k = len - i - 1;
+      if (k >= 2) { // each angle is averaged with its neighbors as soon as the next one is known
+        vertices[k - 1].theta = (before + current + theta) / 3;
+      }
+      before = current;
+      current = theta;
+      final RoadVertex v = new RoadVertex(x, y, radius, color, DEMO_INTEGRITY, theta, xAngle, (short) 0);
+      vertices[k] = v;
       if (i == len - 1) {
         v.addFlag(RoadVertex.START);
       } else if (i == 0) {
@@ -85,23 +97,9 @@ public class AStarRoadGenerator extends RoadGenerator {
         v.addFlag(RoadVertex.MIDPOINT);
       }
     }
-    this.smoothAngles(vertices);
-    return new Road((byte) l, minX, minY, maxX, maxY, vertices);
-  }
-
-  private void smoothAngles(final RoadVertex[] vertices) {
-    final int amount = 1;
-    final float[] angles = new float[vertices.length - amount];
-    for (int i = amount; i < vertices.length - amount; i++) {
-      float sum = 0;
-      for (int s = -amount; s <= amount; s++) {
-        sum += vertices[i + s].theta;
-      }
-      angles[i - amount] = sum / (amount * 2 + 1);
-    }
-    for (int i = 0; i < angles.length; i++) {
-      vertices[i + amount].theta = angles[i];
+    if (len > 1) {
+      vertices[len - 1].theta = 0;
     }
+    return new Road((byte) l, minX, minY, maxX, maxY, vertices);
   }
-
 }
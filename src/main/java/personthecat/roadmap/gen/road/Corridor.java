@@ -0,0 +1,27 @@
+package personthecat.roadmap.gen.road;
+
+public class Corridor {
+  private final int originX;
+  private final int originY;
+  private final int w;
+  private final int h;
+  private final boolean[] cells;
+
+  public Corridor(final int originX, final int originY, final int w, final int h) {
+    this.originX = originX;
+    this.originY = originY;
+    this.w = w;
+    this.h = h;
+    this.cells = new boolean[w * h];
+  }
+
+  public void add(final int cX, final int cY) {
+    this.cells[cX * this.h + cY] = true;
+  }
+
+  public boolean contains(final int x, final int y) {
+    final int cX = (x - this.originX) >> RegionGraph.SHIFT;
+    final int cY = (y - this.originY) >> RegionGraph.SHIFT;
+    return cX >= 0 && cY >= 0 && cX < this.w && cY < this.h && this.cells[cX * this.h + cY];
+  }
+}
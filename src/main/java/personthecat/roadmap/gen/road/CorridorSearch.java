@@ -0,0 +1,147 @@
+package personthecat.roadmap.gen.road;
+
+import personthecat.roadmap.Config;
+import personthecat.roadmap.data.IndexedHeap;
+import personthecat.roadmap.data.Point;
+import personthecat.roadmap.data.SmoothnessGraph;
+import personthecat.roadmap.gen.HeightmapView;
+
+import java.util.Arrays;
+
+public class CorridorSearch {
+  private static final int WIDTH = 2; // cells on either side of the coarse path
+  private static final int STEPS = RegionGraph.CELL / Road.STEP;
+  private static final float GREED = 3; // corridors only need to be passable, not optimal
+  private static final int[] DX = { -1, 1, 0, 0, -1, -1, 1, 1 };
+  private static final int[] DY = { 0, 0, 1, -1, 1, -1, 1, -1 };
+
+  private final int[] stamps = new int[RegionGraph.AREA];
+  private final int[] parents = new int[RegionGraph.AREA];
+  private final float[] gs = new float[RegionGraph.AREA];
+  private final IndexedHeap open = new IndexedHeap(RegionGraph.AREA);
+  private final SmoothnessGraph smoothness;
+  private final Config config;
+  private int epoch;
+
+  public CorridorSearch(final Config config, final SmoothnessGraph smoothness) {
+    this.smoothness = smoothness;
+    this.config = config;
+  }
+
+  public boolean covers(final RegionGraph graph, final Point src, final Point dest) {
+    return graph.indexOf(src.x, src.y) >= 0 && graph.indexOf(dest.x, dest.y) >= 0;
+  }
+
+  public Corridor find(final RegionGraph graph, final HeightmapView gen, final Point src, final Point dest) {
+    if (this.epoch == Integer.MAX_VALUE) {
+      Arrays.fill(this.stamps, 0);
+      this.epoch = 0;
+    }
+    final int e = ++this.epoch;
+    final int start = graph.indexOf(src.x, src.y);
+    final int end = graph.indexOf(dest.x, dest.y);
+    this.open.clear();
+    this.stamps[start] = e;
+    this.parents[start] = start;
+    this.gs[start] = 0;
+    this.open.offer(start, 0);
+
+    int len = 0;
+    while (len++ < Road.MAX_LENGTH && !this.open.isEmpty()) {
+      final int i = this.open.poll();
+      if (i == end) {
+        return this.trace(graph, start, end);
+      }
+      this.stamps[i] = -e;
+      final float sH = graph.getHeight(gen, i);
+      final int cX = i / RegionGraph.SIDE;
+      final int cY = i % RegionGraph.SIDE;
+      for (int o = 0; o < DX.length; o++) {
+        final int nX = cX + DX[o];
+        final int nY = cY + DY[o];
+        if (nX < 0 || nY < 0 || nX >= RegionGraph.SIDE || nY >= RegionGraph.SIDE) {
+          continue;
+        }
+        final int n = nX * RegionGraph.SIDE + nY;
+        if (this.stamps[n] == -e) {
+          continue;
+        }
+        final double c = this.getCost(graph, gen, sH, n, o < 4 ? 1 : 1.41);
+        if (c < 0) {
+          continue;
+        }
+        final float g = (float) (this.gs[i] + c);
+        if (this.stamps[n] != e || g < this.gs[n]) {
+          this.stamps[n] = e;
+          this.parents[n] = i;
+          this.gs[n] = g;
+          final double dX = graph.x(n) - dest.x;
+          final double dY = graph.y(n) - dest.y;
+          this.open.offer(n, g + GREED * (float) Math.sqrt(dX * dX + dY * dY));
+        }
+      }
+    }
+    return null;
+  }
+
+  // The same terms as AStar#checkDirection, summed over every fine step it takes to cross the cell.
+  private double getCost(RegionGraph graph, HeightmapView gen, float sH, int n, double diagonal) {
+    final float eH = graph.getHeight(gen, n);
+    if (eH < 0) {
+      return -1;
+    }
+    final double steps = STEPS * diagonal;
+    final double dH = Math.abs(sH - eH) / steps;
+    if (dH >= 2) {
+      return -1;
+    }
+    final double sd = graph.getSd(gen, this.smoothness, n);
+    double f = Road.STEP + dH * dH * 3 + sd * 2;
+    final int minCutoff = this.config.getShorelineCutoff();
+    final int maxCutoff = this.config.getMountainCutoff();
+    if (eH < minCutoff) {
+      f += (minCutoff - eH) * (minCutoff - eH);
+    } else if (eH > maxCutoff) {
+      f += (eH - maxCutoff) * (eH - maxCutoff);
+    }
+    return f * steps;
+  }
+
+  private Corridor trace(final RegionGraph graph, final int start, final int end) {
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    int i = end;
+    while (true) {
+      final int cX = i / RegionGraph.SIDE;
+      final int cY = i % RegionGraph.SIDE;
+      if (cX < minX) minX = cX;
+      if (cY < minY) minY = cY;
+      if (cX > maxX) maxX = cX;
+      if (cY > maxY) maxY = cY;
+      if (i == start) break;
+      i = this.parents[i];
+    }
+    minX -= WIDTH;
+    minY -= WIDTH;
+    final Corridor corridor = new Corridor(
+      graph.getOriginX() + (minX << RegionGraph.SHIFT),
+      graph.getOriginY() + (minY << RegionGraph.SHIFT),
+      maxX - minX + WIDTH + 1,
+      maxY - minY + WIDTH + 1);
+    i = end;
+    while (true) {
+      final int cX = i / RegionGraph.SIDE - minX;
+      final int cY = i % RegionGraph.SIDE - minY;
+      for (int x = cX - WIDTH; x <= cX + WIDTH; x++) {
+        for (int y = cY - WIDTH; y <= cY + WIDTH; y++) {
+          corridor.add(x, y);
+        }
+      }
+      if (i == start) break;
+      i = this.parents[i];
+    }
+    return corridor;
+  }
+}
@@ -0,0 +1,116 @@
+package personthecat.roadmap.gen.road;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import personthecat.roadmap.Config;
+import personthecat.roadmap.data.SmoothnessGraph;
+import personthecat.roadmap.gen.HeightmapView;
+
+import java.util.Arrays;
+
+// Caches the per-cell heights and SDs behind AStar's cost function. The cost itself is still summed by the search in
+// the same order as when nothing is cached, so both produce exactly the same roads. Searches only ever visit cells with the same parity as their
+// origin, so each tile holds every other block of a single parity class. Cells are filled in on first use, since
+// searches only touch a narrow band of each tile.
+public class CostField {
+  private static final int SHIFT = 5;
+  private static final int TILE = 1 << SHIFT;
+  private static final int MASK = TILE - 1;
+
+  private final Long2ObjectMap<Tile> tiles = new Long2ObjectOpenHashMap<>();
+  private final Config config;
+  private final SmoothnessGraph smoothness;
+  private HeightmapView gen;
+  private int terrainKey;
+  private long clock;
+  private long lastKey = Long.MIN_VALUE;
+  private Tile lastTile;
+
+  public CostField(final Config config, final SmoothnessGraph smoothness) {
+    this.config = config;
+    this.smoothness = smoothness;
+  }
+
+  public void reset(final HeightmapView gen) {
+    final int key = gen.getTerrainKey();
+    if (gen != this.gen || key != this.terrainKey) {
+      this.clear();
+      this.gen = gen;
+      this.terrainKey = key;
+    }
+  }
+
+  public void clear() {
+    this.tiles.clear();
+    this.lastKey = Long.MIN_VALUE;
+    this.lastTile = null;
+  }
+
+  public Tile getTile(final int x, final int y) {
+    final int tX = x >> (SHIFT + 1);
+    final int tY = y >> (SHIFT + 1);
+    final long key = ((long) tX << 34) | ((tY & 0xFFFFFFFFL) << 2) | ((x & 1) << 1) | (y & 1);
+    if (key == this.lastKey) {
+      return this.lastTile;
+    }
+    Tile t = this.tiles.get(key);
+    if (t == null) {
+      this.evictIfFull();
+      t = new Tile();
+      this.tiles.put(key, t);
+    }
+    t.used = ++this.clock;
+    this.lastKey = key;
+    this.lastTile = t;
+    return t;
+  }
+
+  public static int indexOf(final int x, final int y) {
+    return ((x >> 1) & MASK) << SHIFT | ((y >> 1) & MASK);
+  }
+
+  private void evictIfFull() {
+    final int capacity = this.config.getCostCacheSize();
+    if (this.tiles.size() < capacity) {
+      return;
+    }
+    // drop the least recently used quarter in one pass rather than scanning on every miss
+    final long[] stamps = new long[this.tiles.size()];
+    int i = 0;
+    for (final Tile t : this.tiles.values()) {
+      stamps[i++] = t.used;
+    }
+    Arrays.sort(stamps);
+    final long cutoff = stamps[stamps.length - capacity * 3 / 4 - 1];
+    this.tiles.values().removeIf(t -> t.used <= cutoff);
+    this.lastKey = Long.MIN_VALUE;
+    this.lastTile = null;
+  }
+
+  public float getHeight(final Tile t, final int c, final int x, final int y) {
+    final float h = t.heights[c];
+    if (h == h) {
+      return h;
+    }
+    return t.heights[c] = this.gen.sample(x, y);
+  }
+
+  public float getSd(final Tile t, final int c, final int x, final int y) {
+    final float sd = t.sds[c];
+    if (sd == sd) {
+      return sd;
+    }
+    return t.sds[c] = this.smoothness.getSd(this.gen, x, y);
+  }
+
+  public static class Tile {
+    private final float[] heights = new float[TILE * TILE];
+    private final float[] sds = new float[TILE * TILE];
+    private long used;
+
+    private Tile() {
+      Arrays.fill(this.heights, Float.NaN);
+      Arrays.fill(this.sds, Float.NaN);
+    }
+  }
+}
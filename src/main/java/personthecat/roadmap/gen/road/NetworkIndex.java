@@ -0,0 +1,105 @@
+package personthecat.roadmap.gen.road;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import personthecat.roadmap.util.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+// A uniform grid over the networks of a region, so that lookups near a point only visit the networks that could
+// possibly be there. Each network is listed in every cell its padded bounds touch, in the order it was added.
+class NetworkIndex {
+  private static final int SHIFT = 8;
+  private static final int PADDING = Road.PADDING;
+
+  private final Long2ObjectMap<List<Entry>> cells = new Long2ObjectOpenHashMap<>();
+  private int maxRadius;
+
+  void add(final RoadNetwork n) {
+    final Entry e = new Entry(n);
+    final int minX = (n.minX - PADDING) >> SHIFT;
+    final int minY = (n.minY - PADDING) >> SHIFT;
+    final int maxX = (n.maxX + PADDING) >> SHIFT;
+    final int maxY = (n.maxY + PADDING) >> SHIFT;
+    for (int x = minX; x <= maxX; x++) {
+      for (int y = minY; y <= maxY; y++) {
+        this.cells.computeIfAbsent(key(x, y), k -> new ArrayList<>()).add(e);
+      }
+    }
+    // never shrinks, which only makes overlapsCircle() look a little farther than it needs to
+    this.maxRadius = Math.max(this.maxRadius, e.r);
+  }
+
+  void addAll(final NetworkIndex other) {
+    for (final Long2ObjectMap.Entry<List<Entry>> c : other.cells.long2ObjectEntrySet()) {
+      this.cells.put(c.getLongKey(), new ArrayList<>(c.getValue()));
+    }
+    this.maxRadius = Math.max(this.maxRadius, other.maxRadius);
+  }
+
+  void removeIf(final Predicate<RoadNetwork> predicate) {
+    this.cells.values().removeIf(l -> {
+      l.removeIf(e -> predicate.test(e.network));
+      return l.isEmpty();
+    });
+  }
+
+  // Every network that may contain the point, in the order they were added.
+  List<RoadNetwork> getNetworksAt(final int x, final int y) {
+    final List<Entry> l = this.cells.get(key(x >> SHIFT, y >> SHIFT));
+    if (l == null) {
+      return Collections.emptyList();
+    }
+    final List<RoadNetwork> networks = new ArrayList<>(l.size());
+    for (final Entry e : l) {
+      networks.add(e.network);
+    }
+    return networks;
+  }
+
+  // Whether any main road's bounding circle is within (r + its radius) * factor of the circle at x, y.
+  boolean overlapsCircle(final int x, final int y, final int r, final double factor) {
+    final int reach = (int) Math.ceil((r + this.maxRadius) * factor);
+    final int minX = (x - reach) >> SHIFT;
+    final int minY = (y - reach) >> SHIFT;
+    final int maxX = (x + reach) >> SHIFT;
+    final int maxY = (y + reach) >> SHIFT;
+    for (int cX = minX; cX <= maxX; cX++) {
+      for (int cY = minY; cY <= maxY; cY++) {
+        final List<Entry> l = this.cells.get(key(cX, cY));
+        if (l == null) {
+          continue;
+        }
+        for (final Entry e : l) {
+          if (Utils.distance(x, y, e.x, e.y) <= (r + e.r) * factor) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static long key(final int x, final int y) {
+    return ((long) x << 32) | (y & 0xFFFFFFFFL);
+  }
+
+  private static class Entry {
+    final RoadNetwork network;
+    final int x;
+    final int y;
+    final int r;
+
+    Entry(final RoadNetwork network) {
+      final Road main = network.getMainRoad();
+      final RoadVertex c = main.vertices()[main.vertices().length / 2];
+      this.network = network;
+      this.x = c.x;
+      this.y = c.y;
+      this.r = main.length() / 2;
+    }
+  }
+}
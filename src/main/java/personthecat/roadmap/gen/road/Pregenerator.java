@@ -4,7 +4,7 @@ import personthecat.roadmap.Config;
 import personthecat.roadmap.util.Stopwatch;
 import personthecat.roadmap.util.Utils;
 import personthecat.roadmap.data.Point;
-import personthecat.roadmap.gen.HeightmapGenerator;
+import personthecat.roadmap.gen.HeightmapView;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -40,12 +40,13 @@ public abstract class Pregenerator {
     return new Multithreaded(config, map);
   }
 
-  public final void run(final HeightmapGenerator mapGen, final short x, final short y) {
+  public final void run(final HeightmapView mapGen, final short x, final short y) {
     this.sw.logStart("pre-generating roads...");
+    this.map.getSearchStats().reset();
     this.generateRegions(mapGen, x, y);
   }
 
-  protected abstract void generateRegions(final HeightmapGenerator mapGen, final short x, final short y);
+  protected abstract void generateRegions(final HeightmapView mapGen, final short x, final short y);
 
   protected List<Point> getSortedOrigins(final short x, final short y) {
     final List<Point> origins = new ArrayList<>();
@@ -89,6 +90,9 @@ public abstract class Pregenerator {
     final int dC = d * RoadRegion.CHUNK_LEN;
     this.printShape();
     this.sw.logEnd("pre-generated %s / %s regions = %s^2r = %s^2b = %s^2c", count, max, d, dB, dC);
+    if (this.config.isLogSearchStats()) {
+      System.out.println("pre-generation searches: " + this.map.getSearchStats());
+    }
   }
 
   protected void printShape() {
@@ -115,7 +119,7 @@ public abstract class Pregenerator {
     }
 
     @Override
-    protected void generateRegions(final HeightmapGenerator mapGen, final short x, final short y) {
+    protected void generateRegions(final HeightmapView mapGen, final short x, final short y) {
       final List<Point> origins = this.getSortedOrigins(x, y);
       int count = 0;
       for (final Point o : origins) {
@@ -134,7 +138,7 @@ public abstract class Pregenerator {
     }
 
     @Override
-    protected void generateRegions(final HeightmapGenerator mapGen, final short x, final short y) {
+    protected void generateRegions(final HeightmapView mapGen, final short x, final short y) {
       final ExecutorService executor = Executors.newFixedThreadPool(this.config.getPregenThreadCount());
       final ThreadLocal<RoadGenerator> generators = ThreadLocal.withInitial(this.map::newGenerator);
       final AtomicInteger count = new AtomicInteger(0);
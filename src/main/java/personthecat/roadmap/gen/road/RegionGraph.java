@@ -0,0 +1,73 @@
+package personthecat.roadmap.gen.road;
+
+import personthecat.roadmap.data.SmoothnessGraph;
+import personthecat.roadmap.gen.HeightmapView;
+
+import java.util.Arrays;
+
+public class RegionGraph {
+  public static final int SHIFT = 5;
+  public static final int CELL = 1 << SHIFT;
+  // any network generated for this region starts within one quad and ends within one road of it
+  public static final int MARGIN = RoadRegion.QUAD_BLOCKS + Road.MAX_DISTANCE + Road.PADDING * 2;
+  public static final int SIDE = (RoadRegion.LEN + MARGIN * 2) >> SHIFT;
+  public static final int AREA = SIDE * SIDE;
+
+  private final int originX;
+  private final int originY;
+  private final float[] heights;
+  private final float[] sds;
+
+  public RegionGraph(final short x, final short y) {
+    this.originX = RoadRegion.regionToAbs(x) - MARGIN;
+    this.originY = RoadRegion.regionToAbs(y) - MARGIN;
+    this.heights = new float[AREA];
+    this.sds = new float[AREA];
+    Arrays.fill(this.heights, Float.NaN);
+    Arrays.fill(this.sds, Float.NaN);
+  }
+
+  public int indexOf(final int x, final int y) {
+    final int cX = (x - this.originX) >> SHIFT;
+    final int cY = (y - this.originY) >> SHIFT;
+    if (cX < 0 || cY < 0 || cX >= SIDE || cY >= SIDE) {
+      return -1;
+    }
+    return cX * SIDE + cY;
+  }
+
+  public int x(final int i) {
+    return this.originX + (i / SIDE << SHIFT) + CELL / 2;
+  }
+
+  public int y(final int i) {
+    return this.originY + (i % SIDE << SHIFT) + CELL / 2;
+  }
+
+  public int getOriginX() {
+    return this.originX;
+  }
+
+  public int getOriginY() {
+    return this.originY;
+  }
+
+  public float getHeight(final HeightmapView gen, final int i) {
+    final float h = this.heights[i];
+    if (h == h) {
+      return h;
+    }
+    // cells are sampled lazily, so only the area actually searched is ever computed
+    return this.heights[i] = gen.sampleCoarse(this.x(i), this.y(i));
+  }
+
+  // Heights and SDs are filled in separately, since quads searching in parallel may race to fill the same cell.
+  // Both always compute the same value, so whichever write lands is correct.
+  public float getSd(final HeightmapView gen, final SmoothnessGraph smoothness, final int i) {
+    final float sd = this.sds[i];
+    if (sd == sd) {
+      return sd;
+    }
+    return this.sds[i] = smoothness.getSd(gen, this.x(i), this.y(i));
+  }
+}
@@ -1,10 +1,14 @@
 package personthecat.roadmap.gen.road;
 
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 import personthecat.roadmap.Config;
 import personthecat.roadmap.util.Stopwatch;
 import personthecat.roadmap.data.Tracker;
 import personthecat.roadmap.util.Utils;
-import personthecat.roadmap.gen.HeightmapGenerator;
+import personthecat.roadmap.gen.HeightmapView;
 import personthecat.roadmap.data.Point;
 import personthecat.roadmap.data.SmoothnessGraph;
 import personthecat.roadmap.data.VertexGraph;
@@ -14,11 +18,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public abstract class RoadGenerator {
   protected static final short QUAD_RADIUS = 2;
-  protected static final int SCAN_RADIUS = 32;
-  protected static final int SCAN_STEP = Road.STEP;
   protected static final float TAU = (float) (Math.PI * 2);
 
   protected final RoadMap map;
@@ -26,27 +31,35 @@ public abstract class RoadGenerator {
   protected final Tracker tracker;
   protected final SmoothnessGraph graph;
   protected final Stopwatch sw = new Stopwatch();
+  protected final SearchStats networkStats = new SearchStats();
+  protected final SearchStats regionStats = new SearchStats();
+  private Candidate candidate;
 
   protected RoadGenerator(final RoadMap map, final Config config, final Tracker tracker) {
     this.map = map;
     this.config = config;
     this.tracker = tracker;
-    this.graph = new SmoothnessGraph();
+    this.graph = map.getSmoothness();
   }
 
   public final Map<Point, RoadRegion> generateRegion(
-      RoadRegion region, HeightmapGenerator gen, short x, short y, boolean partial) {
+      RoadRegion region, HeightmapView gen, short x, short y, boolean partial) {
     this.sw.logStart("Generating road map %s, %s", x, y);
     final Map<Point, RoadRegion> generated = this.generate(region, gen, x, y, partial);
     this.sw.logEnd("map done %s, %s", x, y);
     this.sw.logAverage("average");
-    this.graph.clear();
+    if (this.config.isLogSearchStats()) {
+      System.out.printf("searched %s, %s: %s\n", x, y, this.regionStats);
+      this.map.getSearchStats().add(this.regionStats);
+    }
+    this.regionStats.reset();
     return generated;
   }
 
   protected Map<Point, RoadRegion> generate(
-      RoadRegion region, HeightmapGenerator gen, short x, short y, boolean partial) {
+      RoadRegion region, HeightmapView gen, short x, short y, boolean partial) {
     final Map<Point, RoadRegion> generated = new HashMap<>();
+    final List<Quad> quads = new ArrayList<>();
     final short cQX = (short) ((x * 2) + 1);
     final short cQY = (short) ((y * 2) + 1);
     generated.put(new Point(x, y), region);
@@ -57,30 +70,156 @@ public abstract class RoadGenerator {
         final short yO = (short) (qY / 2);
         // in current region
         if (xO == x && yO == y) {
-          if (!region.hasQuad(qX, qY)) {
-            this.generateQuad(region, region, gen, qX, qY, x, y, partial);
-            region.setQuadGenerated(qX, qY);
+          if (!region.hasQuad(qX, qY) && !isPlanned(quads, region, qX, qY)) {
+            quads.add(new Quad(region, qX, qY, false));
           }
           continue;
         }
         final Point pO = new Point(xO, yO);
         final RoadRegion rO = generated.computeIfAbsent(pO, p -> this.map.loadPartial((short) p.x, (short) p.y));
-        if (rO.hasQuad(qX, qY)) {
-          rO.copyQuadInto(region, qX, qY);
-        } else {
-          this.generateQuad(region, rO, gen, qX, qY, x, y, partial);
-          rO.setQuadGenerated(qX, qY);
-        }
+        quads.add(new Quad(rO, qX, qY, rO.hasQuad(qX, qY) || isPlanned(quads, rO, qX, qY)));
         generated.put(pO, rO);
       }
     }
+    this.speculate(region, gen, quads, x, y, partial);
+    for (final Quad q : quads) {
+      if (q.copy) {
+        q.source.copyQuadInto(region, q.x, q.y);
+        continue;
+      }
+      if (q.candidates != null) {
+        this.commitQuad(region, gen, q, x, y, partial);
+      } else {
+        this.generateQuad(region, q.source, gen, q.x, q.y, x, y, partial);
+      }
+      q.source.setQuadGenerated(q.x, q.y);
+    }
     // Previously kept all networks to avoid some overlap. Can safely remove them now.
-    region.getData().removeIf(n -> !n.isInRegion(x, y));
+    region.removeNetworksIf(n -> !n.isInRegion(x, y));
     return generated;
   }
 
+  // Quads below 0 share flags with the quads above them, so whichever comes second counts as already generated.
+  private static boolean isPlanned(final List<Quad> quads, final RoadRegion r, final short qX, final short qY) {
+    final byte flag = RoadRegion.getQuadFlag(qX, qY);
+    for (final Quad q : quads) {
+      if (!q.copy && q.source == r && RoadRegion.getQuadFlag(q.x, q.y) == flag) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Traces every quad that needs one at the same time, each against its own copy of the region. The results are
+  // checked and committed in the usual order afterward, so the region comes out exactly as it would serially.
+  private void speculate(
+      RoadRegion region, HeightmapView gen, List<Quad> quads, short pX, short pY, boolean partial) {
+    final int threads = this.config.getQuadThreadCount();
+    final List<Quad> pending = quads.stream().filter(q -> !q.copy).toList();
+    if (threads < 2 || pending.size() < 2) {
+      return;
+    }
+    final List<Callable<Void>> tasks = new ArrayList<>(pending.size());
+    for (final Quad q : pending) {
+      final RoadRegion copy = region.copyForSpeculation();
+      tasks.add(() -> {
+        final RoadGenerator worker = this.map.borrowGenerator();
+        try {
+          q.candidates = worker.speculateQuad(copy, gen, q.x, q.y, pX, pY, partial);
+          q.stats.add(worker.networkStats);
+        } finally {
+          worker.networkStats.reset();
+          this.map.returnGenerator(worker);
+        }
+        return null;
+      });
+    }
+    try {
+      for (final Future<Void> f : this.map.invokeQuads(threads, tasks)) {
+        f.get();
+      }
+    } catch (final ExecutionException | InterruptedException e) {
+      throw new IllegalStateException("Error generating quads", e);
+    }
+  }
+
+  // generateQuad(), except that networks are only recorded, along with every check that depended on the region
+  private List<Candidate> speculateQuad(
+      RoadRegion region, HeightmapView gen, short qX, short qY, short pX, short pY, boolean partial) {
+    final List<Candidate> candidates = new ArrayList<>();
+    final Map<Point, RoadNetwork> placed = new HashMap<>();
+    final int cXO = RoadRegion.quadToChunk(qX);
+    final int cYO = RoadRegion.quadToChunk(qY);
+    final long seed = this.tracker.getSeed();
+    final Random rand = new Random(seed);
+    final float chance = this.config.getRoadChance();
+    for (int cX = cXO; cX < cXO + RoadRegion.QUAD_CHUNK_LEN; cX++) {
+      for (int cY = cYO; cY < cYO + RoadRegion.QUAD_CHUNK_LEN; cY++) {
+        Utils.setFeatureSeed(rand, seed, cX, cY);
+        if (rand.nextFloat() > chance) {
+          continue;
+        }
+        final Point center = new Point((cX << 4) + 8, (cY << 4) + 8);
+        final Point nearest = this.getNearestSuitable(gen, center);
+        if (nearest == null) {
+          continue;
+        }
+        final Candidate c = new Candidate(cX, cY, nearest);
+        candidates.add(c);
+        RoadNetwork n = placed.get(nearest);
+        if (n == null) {
+          n = this.map.findNetwork(nearest.x, nearest.y);
+        }
+        if (n == null) {
+          this.candidate = c;
+          try {
+            n = c.network = this.generateNetwork(region, gen, rand, nearest, pX, pY, partial);
+          } finally {
+            this.candidate = null;
+          }
+          c.traced = true;
+        }
+        if (n != null) {
+          placed.put(nearest, n);
+          region.addNetwork(n);
+        }
+      }
+    }
+    return candidates;
+  }
+
+  private void commitQuad(RoadRegion region, HeightmapView gen, Quad q, short pX, short pY, boolean partial) {
+    final long seed = this.tracker.getSeed();
+    final Random rand = new Random(seed);
+    this.regionStats.add(q.stats);
+    for (final Candidate c : q.candidates) {
+      RoadNetwork n = this.map.getNetwork(c.nearest.x, c.nearest.y);
+      if (n == null) {
+        if (c.isValid(region)) {
+          n = c.network;
+        } else {
+          // something committed ahead of this changed what the trial saw, so trace it again for real
+          Utils.setFeatureSeed(rand, seed, c.cX, c.cY);
+          rand.nextFloat();
+          n = this.generateNetwork(region, gen, rand, c.nearest, pX, pY, partial);
+          this.regionStats.add(this.networkStats);
+          this.networkStats.reset();
+        }
+        if (n != null) {
+          this.map.addNetwork(c.nearest.x, c.nearest.y, n);
+        }
+      }
+      if (n != null) {
+        region.addNetwork(n);
+        if (partial && region != q.source) {
+          q.source.addNetwork(n);
+        }
+      }
+    }
+  }
+
   protected void generateQuad(
-      RoadRegion region, RoadRegion rO, HeightmapGenerator gen, short qX, short qY, short pX, short pY, boolean partial) {
+      RoadRegion region, RoadRegion rO, HeightmapView gen, short qX, short qY, short pX, short pY, boolean partial) {
     final int cXO = RoadRegion.quadToChunk(qX);
     final int cYO = RoadRegion.quadToChunk(qY);
     final long seed = this.tracker.getSeed();
@@ -100,14 +239,16 @@ public abstract class RoadGenerator {
         RoadNetwork n = this.map.getNetwork(nearest.x, nearest.y);
         if (n == null) {
           n = this.generateNetwork(region, gen, rand, nearest, pX, pY, partial);
+          this.regionStats.add(this.networkStats);
+          this.networkStats.reset();
           if (n != null) {
             this.map.addNetwork(nearest.x, nearest.y, n);
           }
         }
         if (n != null) {
-          region.getData().add(n);
+          region.addNetwork(n);
           if (partial && region != rO) {
-            rO.getData().add(n);
+            rO.addNetwork(n);
           }
         }
       }
@@ -115,7 +256,7 @@ public abstract class RoadGenerator {
   }
 
   protected RoadNetwork generateNetwork(
-      RoadRegion region, HeightmapGenerator gen, Random rand, Point src, short pX, short pY, boolean partial) {
+      RoadRegion region, HeightmapView gen, Random rand, Point src, short pX, short pY, boolean partial) {
     // build main road
     final Road r0 = this.getMainRoad(region, gen, src, rand);
     if (r0 == null || (!partial && !r0.isInRegion(pX, pY))) {
@@ -149,6 +290,7 @@ public abstract class RoadGenerator {
     final List<Road> roads = new ArrayList<>();
     final VertexGraph graph = new VertexGraph();
     roads.add(r0);
+    graph.trackDistances(bx1, by1, bx2, by2);
     graph.plot(r0);
     // generate random points in circle from center
     final int max = (bx2 - bx1) / 2; // 1/2 from center
@@ -158,6 +300,8 @@ public abstract class RoadGenerator {
     final float a = r0.broadAngle();
     final VertexGraph.Target target = graph.getTarget(cX, cY, 10.0);
     assert target != null;
+    // every source is drawn up front, since none of the draws depend on what gets traced
+    final List<Point> sources = new ArrayList<>();
     for (int i = 0; i < this.config.getMaxBranches(); i++) {
       double aO = a + Math.PI / 2 + rand.nextFloat() * Math.PI;
       if (rand.nextBoolean()) aO = Math.PI - aO;
@@ -165,11 +309,24 @@ public abstract class RoadGenerator {
       final int xO = (int) (cX + d * Math.cos(aO));
       final int yO = (int) (cY + d * Math.sin(aO));
       final Point s = this.getNearestSuitable(gen, new Point(xO, yO));
-      if (s == null) {
-        continue;
+      if (s != null) {
+        sources.add(s);
+      }
+    }
+    final List<Trial> trials = this.traceTrials(region, gen, sources, target);
+    for (int i = 0; i < sources.size(); i++) {
+      final Trial t = trials != null ? trials.get(i) : null;
+      final boolean committed = t != null && t.commit(target);
+      if (t != null) {
+        this.networkStats.addTrial(committed);
+      }
+      final Road rN;
+      if (committed) {
+        rN = t.road;
+      } else {
+        // trace road to the nearest vertex
+        rN = this.trace(region, gen, sources.get(i), target);
       }
-      // trace road to the nearest vertex
-      final Road rN = this.trace(gen, s, target);
       if (rN != null) {
         // to be correct, we need to flag all points in range.
         rN.last().addFlag(RoadVertex.INTERSECTION);
@@ -177,10 +334,46 @@ public abstract class RoadGenerator {
         graph.plot(rN);
       }
     }
+    graph.releaseDistances();
     return new RoadNetwork(roads, graph);
   }
 
-  protected Road getMainRoad(RoadRegion region, HeightmapGenerator gen, Point src, Random rand) {
+  // Traces every branch at once against the graph as it is now. Branches are still committed in order afterward,
+  // and any trial that would have gotten a different answer from a branch plotted ahead of it is traced again, so the
+  // network never changes.
+  private List<Trial> traceTrials(
+      RoadRegion region, HeightmapView gen, List<Point> sources, VertexGraph.Target target) {
+    final int threads = this.config.getQuadThreadCount();
+    if (!this.config.isSpeculativeBranches() || threads < 2 || sources.size() < 2) {
+      return null;
+    }
+    final List<Callable<Trial>> tasks = new ArrayList<>(sources.size());
+    for (final Point s : sources) {
+      tasks.add(() -> {
+        final RoadGenerator worker = this.map.borrowGenerator();
+        try {
+          final TrialTarget dest = new TrialTarget(target.copy(Trial.UNSET));
+          final Road r = worker.trace(region, gen, s, dest);
+          this.networkStats.add(worker.networkStats);
+          return new Trial(r, dest);
+        } finally {
+          worker.networkStats.reset();
+          this.map.returnGenerator(worker);
+        }
+      });
+    }
+    final List<Trial> trials = new ArrayList<>(sources.size());
+    try {
+      for (final Future<Trial> f : this.map.invokeQuads(threads, tasks)) {
+        trials.add(f.get());
+      }
+    } catch (final ExecutionException | InterruptedException e) {
+      throw new IllegalStateException("Error tracing branches", e);
+    }
+    return trials;
+  }
+
+  protected Road getMainRoad(RoadRegion region, HeightmapView gen, Point src, Random rand) {
     final float a = rand.nextFloat() * TAU; // any angle
     final int minL = this.config.getMinRoadLength();
     final int maxL = this.config.getMaxRoadLength();
@@ -192,72 +385,128 @@ public abstract class RoadGenerator {
       return null;
     }
     final Point dest = this.getNearestSuitable(gen, e);
-    return dest == null ? null : this.trace(gen, src, dest);
+    return dest == null ? null : this.trace(region, gen, src, dest);
   }
 
   protected boolean isTooClose(RoadRegion region, Point src, Point dest, int d) {
-    final int cX1 = (src.x + dest.x) / 2;
-    final int cY1 = (src.y + dest.y) / 2;
-    final int r1 = d / 2;
-
-    for (final RoadNetwork n : region) {
-      final Road r = n.getMainRoad();
-      final RoadVertex cv = r.vertices()[r.vertices().length / 2];
-      final int cX2 = cv.x;
-      final int cY2 = cv.y;
-      final int r2 = r.length() / 2;
-      // too close if >30% overlap
-      if (Utils.distance(cX1, cY1, cX2, cY2) <= (r1 + r2) * 0.7) {
-        return true;
-      }
+    final boolean tooClose = overlapsNetwork(region, src, dest, d);
+    if (this.candidate != null) {
+      this.candidate.checks.add(new Check(src, dest, d, tooClose));
     }
-    return false;
+    return tooClose;
   }
 
-  protected Point getNearestSuitable(final HeightmapGenerator gen, final Point point) {
-    // avoid oceans (in game, can check continental-ness)
-    if (gen.sample(point.x, point.y) < 0) {
-      return null;
+  private static boolean overlapsNetwork(RoadRegion region, Point src, Point dest, int d) {
+    // too close if >30% overlap
+    return region.overlapsNetwork((src.x + dest.x) / 2, (src.y + dest.y) / 2, d / 2, 0.7);
+  }
+
+  protected Point getNearestSuitable(final HeightmapView gen, final Point point) {
+    return this.map.getSuitability().getNearest(gen, point);
+  }
+
+  protected abstract Road trace(final RoadRegion region, final HeightmapView gen, final Point src, final Destination dest);
+
+  private static class Quad {
+    final RoadRegion source;
+    final short x;
+    final short y;
+    final boolean copy;
+    final SearchStats stats = new SearchStats();
+    List<Candidate> candidates;
+
+    Quad(final RoadRegion source, final short x, final short y, final boolean copy) {
+      this.source = source;
+      this.x = x;
+      this.y = y;
+      this.copy = copy;
     }
-    double minWeight = Double.MAX_VALUE;
-    int bestX = Integer.MAX_VALUE;
-    int bestY = Integer.MAX_VALUE;
-    for (int xO = point.x - SCAN_RADIUS; xO < point.x + SCAN_RADIUS; xO += SCAN_STEP) {
-      for (int yO = point.y - SCAN_RADIUS; yO < point.y + SCAN_RADIUS; yO += SCAN_STEP) {
-        final double weight = this.getWeight(gen, xO, yO);
-        if (weight < 0) {
-          return new Point(xO, yO);
-        } else if (weight < minWeight) {
-          minWeight = weight;
-          bestX = xO;
-          bestY = yO;
+  }
+
+  // a network traced ahead of time, which still holds if the region it was traced against agrees with the real one
+  private static class Candidate {
+    final int cX;
+    final int cY;
+    final Point nearest;
+    final List<Check> checks = new ArrayList<>(1);
+    RoadNetwork network;
+    boolean traced;
+
+    Candidate(final int cX, final int cY, final Point nearest) {
+      this.cX = cX;
+      this.cY = cY;
+      this.nearest = nearest;
+    }
+
+    boolean isValid(final RoadRegion region) {
+      if (!this.traced || this.checks.isEmpty()) {
+        return false;
+      }
+      for (final Check c : this.checks) {
+        if (overlapsNetwork(region, c.src, c.dest, c.d) != c.tooClose) {
+          return false;
         }
       }
+      return true;
     }
-    if (minWeight != Double.MAX_VALUE) {
-      return new Point(bestX, bestY);
-    }
-    return null;
   }
 
-  protected double getWeight(final HeightmapGenerator gen, final int aX, final int aY) {
-    final float h = gen.sample(aX, aY);
-    if (h < 0) {
-      return Double.MAX_VALUE;
+  private record Check(Point src, Point dest, int d, boolean tooClose) {}
+
+  // Remembers every question a trial search asked of the graph, along with the answer it got.
+  private static class TrialTarget implements Destination {
+    final VertexGraph.Target target;
+    final LongList queries = new LongArrayList();
+    final DoubleList mins = new DoubleArrayList();
+    final DoubleList answers = new DoubleArrayList();
+
+    TrialTarget(final VertexGraph.Target target) {
+      this.target = target;
     }
-    final int maxCutoff = this.config.getMountainCutoff();
-    if (h > maxCutoff + 20) {
-      return Double.MAX_VALUE;
+
+    @Override
+    public double distance(final int x, final int y, final double min) {
+      final double d = this.target.distance(x, y, min);
+      this.queries.add(((long) x << 32) | (y & 0xFFFFFFFFL));
+      this.mins.add(min);
+      this.answers.add(d);
+      return d;
     }
-    final int minCutoff = this.config.getShorelineCutoff();
-    double w = this.graph.getSd(gen, aX, aY) * 100.0;
-    if (h < minCutoff) {
-      w += (minCutoff - h) * (minCutoff - h);
-    } else if (h > maxCutoff) {
-      w += (h - maxCutoff) * (h - maxCutoff);
+
+    @Override
+    public byte getRoadLevel() {
+      return this.target.getRoadLevel();
     }
-    return w;
   }
 
-  protected abstract Road trace(final HeightmapGenerator gen, final Point src, final Destination dest);
+  // A search only ever sees the graph through its destination, so a trial whose questions would all get the same
+  // answers from the graph as it is now would have traced exactly the same road.
+  private static class Trial {
+    static final byte UNSET = Byte.MIN_VALUE;
+    final Road road;
+    final TrialTarget dest;
+
+    Trial(final Road road, final TrialTarget dest) {
+      this.road = road;
+      this.dest = dest;
+    }
+
+    // Replays the questions against the real target, carrying its road level over the way a real trace would.
+    boolean commit(final VertexGraph.Target target) {
+      final VertexGraph.Target replay = target.copy(target.l);
+      final TrialTarget dest = this.dest;
+      for (int i = 0; i < dest.queries.size(); i++) {
+        final long q = dest.queries.getLong(i);
+        if (replay.distance((int) (q >> 32), (int) q, dest.mins.getDouble(i)) != dest.answers.getDouble(i)) {
+          return false;
+        }
+      }
+      // the road took its level from the trial, which started out without one
+      if (this.road != null && replay.l != dest.target.l) {
+        return false;
+      }
+      target.l = replay.l;
+      return true;
+    }
+  }
 }
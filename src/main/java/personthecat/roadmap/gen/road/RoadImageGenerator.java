@@ -83,8 +83,8 @@ public class RoadImageGenerator {
     final int aY = cY << 4;
     final short rX = RoadRegion.absToRegion(aX);
     final short rY = RoadRegion.absToRegion(aY);
-    final RoadRegion region = this.roadMap.getRegion(this.mapGen, rX, rY);
-    for (final RoadNetwork network : region) {
+    final RoadRegion region = this.roadMap.getRegion(this.mapGen.getView(), rX, rY);
+    for (final RoadNetwork network : region.getNetworksAt(aX, aY)) {
       if (!network.containsPoint(aX, aY)) {
         continue;
       }
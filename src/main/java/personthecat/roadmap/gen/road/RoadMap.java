@@ -2,16 +2,25 @@ package personthecat.roadmap.gen.road;
 
 import personthecat.roadmap.Config;
 import personthecat.roadmap.data.Tracker;
-import personthecat.roadmap.gen.HeightmapGenerator;
+import personthecat.roadmap.gen.HeightmapView;
 import personthecat.roadmap.data.Point;
+import personthecat.roadmap.data.SmoothnessGraph;
+import personthecat.roadmap.data.SmoothnessType;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class RoadMap {
   private static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor();
@@ -19,27 +28,108 @@ public class RoadMap {
   private final RoadRegion[] regionCache = new RoadRegion[CACHE_SIZE];
   private final ReferenceQueue<RoadNetwork> networkReferences = new ReferenceQueue<>();
   private final Map<Point, WeakReference<RoadNetwork>> networks = new HashMap<>();
-  private final RoadGenerator generator;
+  private final SearchStats searchStats = new SearchStats();
+  private final Queue<RoadGenerator> idleGenerators = new ConcurrentLinkedQueue<>();
   private final Config config;
   private final Tracker tracker;
+  private volatile SmoothnessGraph smoothness;
+  private volatile SuitabilityField suitability;
+  private SmoothnessType smoothnessType;
+  private int smoothnessRadius;
+  private int smoothnessCacheSize;
+  private RoadGenerator generator;
   private int seed;
+  private QuadPool quadPool;
 
   public RoadMap(final Config config, final Tracker tracker) {
     this.config = config;
     this.tracker = tracker;
-    this.generator = this.newGenerator();
+    this.updateSmoothness();
     this.seed = tracker.getSeed();
   }
 
-  public void pregen(final HeightmapGenerator mapGen, final short x, final short y) {
+  // Generators hold on to the graph they were made with, so they are replaced along with it.
+  private synchronized void updateSmoothness() {
+    final SmoothnessType type = this.config.getSmoothnessType();
+    final int radius = this.config.getSmoothnessRadius();
+    final int size = this.config.getSmoothnessCacheSize();
+    if (this.smoothness == null || type != this.smoothnessType || radius != this.smoothnessRadius
+        || size != this.smoothnessCacheSize) {
+      this.smoothness = type.create(this.config);
+      this.suitability = new SuitabilityField(this.config, this.smoothness);
+      this.smoothnessType = type;
+      this.smoothnessRadius = radius;
+      this.smoothnessCacheSize = size;
+      this.idleGenerators.clear();
+      this.generator = this.newGenerator();
+    }
+  }
+
+  public void pregen(final HeightmapView mapGen, final short x, final short y) {
+    this.updateSmoothness();
     Pregenerator.create(this.config, this).run(mapGen, x, y);
   }
 
+  public SearchStats getSearchStats() {
+    return this.searchStats;
+  }
+
+  public SmoothnessGraph getSmoothness() {
+    return this.smoothness;
+  }
+
+  public SuitabilityField getSuitability() {
+    return this.suitability;
+  }
+
   public RoadGenerator newGenerator() {
     return new AStarRoadGenerator(this, this.config, this.tracker);
   }
 
-  public RoadRegion getRegion(final HeightmapGenerator mapGen, final short x, final short y) {
+  // generators for quads being traced in parallel, reused from one region to the next
+  RoadGenerator borrowGenerator() {
+    final RoadGenerator g = this.idleGenerators.poll();
+    return g != null ? g : this.newGenerator();
+  }
+
+  void returnGenerator(final RoadGenerator g) {
+    if (g.graph == this.smoothness) {
+      this.idleGenerators.offer(g);
+    }
+  }
+
+  // Pregen and the quads of a region may be submitting to the pool when the thread count changes, so the old pool
+  // is only shut down once the last of them is done with it.
+  <T> List<Future<T>> invokeQuads(
+      final int threads, final Collection<? extends Callable<T>> tasks) throws InterruptedException {
+    final QuadPool p = this.acquireQuadPool(threads);
+    try {
+      return p.pool.invokeAll(tasks);
+    } finally {
+      this.releaseQuadPool(p);
+    }
+  }
+
+  private synchronized QuadPool acquireQuadPool(final int threads) {
+    final QuadPool current = this.quadPool;
+    if (current == null || current.pool.getParallelism() != threads) {
+      this.quadPool = new QuadPool(new ForkJoinPool(threads));
+      if (current != null && current.users == 0) {
+        current.pool.shutdown();
+      }
+    }
+    this.quadPool.users++;
+    return this.quadPool;
+  }
+
+  private synchronized void releaseQuadPool(final QuadPool p) {
+    if (--p.users == 0 && p != this.quadPool) {
+      p.pool.shutdown();
+    }
+  }
+
+  public RoadRegion getRegion(final HeightmapView mapGen, final short x, final short y) {
+    this.updateSmoothness();
     if (this.seed != this.tracker.getSeed()) {
       Arrays.fill(this.regionCache, null);
       this.seed = this.tracker.getSeed();
@@ -79,28 +169,29 @@ public class RoadMap {
     return RoadRegion.loadFromDisk(this, this.tracker.getSeed(), x, y);
   }
 
-  public void generateRegion(final HeightmapGenerator mapGen, final short x, final short y) {
+  public void generateRegion(final HeightmapView mapGen, final short x, final short y) {
+    this.updateSmoothness();
     this.generateRegion(new RoadRegion(x, y), this.generator, mapGen, this.config.isGeneratePartial());
   }
 
   public void generateRegion(
-      RoadGenerator gen, HeightmapGenerator mapGen, short x, short y, final boolean partial) {
+      RoadGenerator gen, HeightmapView mapGen, short x, short y, final boolean partial) {
     this.generateRegion(new RoadRegion(x, y), gen, mapGen, partial);
   }
 
-  protected void generateRegion(RoadRegion region, HeightmapGenerator mapGen) {
+  protected void generateRegion(RoadRegion region, HeightmapView mapGen) {
     this.generateRegion(region, this.generator, mapGen, this.config.isGeneratePartial());
   }
 
   protected void generateRegion(
-      RoadRegion region, RoadGenerator gen, HeightmapGenerator mapGen, boolean partial) {
+      RoadRegion region, RoadGenerator gen, HeightmapView mapGen, boolean partial) {
     final Map<Point, RoadRegion> generated = gen.generateRegion(region, mapGen, region.x, region.y, partial);
     for (final RoadRegion r : generated.values()) {
       if (r != region) {
         this.cacheRegion(r);
       }
     }
-    if (this.config.isPersistRoads()) {
+    if (this.config.isPersistRoads() && !this.config.isSearchTimed()) {
       final int seed = this.seed;
       this.runInBackground(() -> {
         region.saveToDisk(seed);
@@ -154,6 +245,12 @@ public class RoadMap {
     return n;
   }
 
+  // like getNetwork(), but without caching anything it loads, so that it may be called from any thread
+  RoadNetwork findNetwork(final int x, final int y) {
+    final RoadNetwork n = this.lookupNetwork(x, y);
+    return n != null ? n : this.loadNetworkFromDisk(x, y);
+  }
+
   protected RoadNetwork lookupNetwork(final int x, final int y) {
     final WeakReference<RoadNetwork> ref = this.networks.get(new Point(x, y));
     return ref != null ? ref.get() : null;
@@ -169,4 +266,13 @@ public class RoadMap {
       this.networks.values().remove(ref);
     }
   }
+
+  private static class QuadPool {
+    final ForkJoinPool pool;
+    int users;
+
+    QuadPool(final ForkJoinPool pool) {
+      this.pool = pool;
+    }
+  }
 }
@@ -9,8 +9,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Predicate;
 
 public class RoadRegion implements Iterable<RoadNetwork> {
   private static final String TEMP_SAVE_DIR = "regions";
@@ -34,6 +36,8 @@ public class RoadRegion implements Iterable<RoadNetwork> {
   public final short y;
   private byte quads;
   private final List<RoadNetwork> data;
+  private final NetworkIndex index = new NetworkIndex();
+  private RegionGraph graph;
 
   public RoadRegion(final short x, final short y) {
     this(x, y, (byte) 0, new ArrayList<>());
@@ -48,6 +52,9 @@ public class RoadRegion implements Iterable<RoadNetwork> {
     this.y = y;
     this.quads = quads;
     this.data = data;
+    for (final RoadNetwork n : data) {
+      this.index.add(n);
+    }
   }
 
   public boolean containsPoint(final int x, final int y) {
@@ -61,7 +68,44 @@ public class RoadRegion implements Iterable<RoadNetwork> {
   }
 
   public List<RoadNetwork> getData() {
-    return this.data;
+    return Collections.unmodifiableList(this.data);
+  }
+
+  public void addNetwork(final RoadNetwork n) {
+    this.data.add(n);
+    this.index.add(n);
+  }
+
+  public void removeNetworksIf(final Predicate<RoadNetwork> predicate) {
+    this.data.removeIf(predicate);
+    this.index.removeIf(predicate);
+  }
+
+  // Every network whose bounds may contain the point, in the order they were added. Callers should still check.
+  public List<RoadNetwork> getNetworksAt(final int x, final int y) {
+    return this.index.getNetworksAt(x, y);
+  }
+
+  // Whether the circle at x, y comes closer to the circle around any main road than factor * the sum of their radii.
+  public boolean overlapsNetwork(final int x, final int y, final int r, final double factor) {
+    return this.index.overlapsCircle(x, y, r, factor);
+  }
+
+  public synchronized RegionGraph getGraph() {
+    if (this.graph == null) {
+      this.graph = new RegionGraph(this.x, this.y);
+    }
+    return this.graph;
+  }
+
+  // A stand-in for this region while its quads are traced in parallel. It starts with the same networks and shares
+  // the same search graph, but nothing added to it ever reaches this region.
+  RoadRegion copyForSpeculation() {
+    final RoadRegion r = new RoadRegion(this.x, this.y, this.quads, new ArrayList<>());
+    r.data.addAll(this.data);
+    r.index.addAll(this.index);
+    r.graph = this.getGraph();
+    return r;
   }
 
   public void setQuadGenerated(final short qX, final short qY) {
@@ -83,7 +127,7 @@ public class RoadRegion implements Iterable<RoadNetwork> {
   public void copyQuadInto(final RoadRegion r, final short qX, final short qY) {
     for (final RoadNetwork n : this.data) {
       if (n.isInQuad(qX, qY)) {
-        r.data.add(n);
+        r.addNetwork(n);
       }
     }
   }
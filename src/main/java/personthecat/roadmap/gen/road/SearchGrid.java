@@ -0,0 +1,113 @@
+package personthecat.roadmap.gen.road;
+
+import java.util.Arrays;
+
+// Per-cell state for one search at a time. Cells are addressed by their place in a fixed window centered on the
+// search origin, but only the cells a search actually touches are stored: every expansion looks at no more than 8
+// neighbors, so the expansion budget bounds how many cells can be touched, and the table is sized to twice that.
+// Each slot carries an epoch stamp, so starting a new search is a counter increment.
+public class SearchGrid {
+  public static final int RADIUS = Road.MAX_DISTANCE + Road.PADDING * 2; // must reach the farthest destination
+  public static final int SIDE = RADIUS * 2 / Road.STEP;
+  private static final int MAX_CELLS = Road.MAX_LENGTH * 8 + 3; // plus both ends of a bidirectional search
+  public static final int CAPACITY = Integer.highestOneBit(MAX_CELLS) << 1;
+  private static final int MASK = CAPACITY - 1;
+  private static final int HASH_SHIFT = 32 - Integer.numberOfTrailingZeros(CAPACITY);
+
+  private final int[] claims = new int[CAPACITY];
+  private final int[] cells = new int[CAPACITY];
+  private final int[] stamps = new int[CAPACITY];
+  private final int[] parents = new int[CAPACITY];
+  private final float[] fs = new float[CAPACITY];
+  private final float[] gs = new float[CAPACITY];
+  private final float[] ns = new float[CAPACITY];
+  private int epoch = 0;
+  private int originX;
+  private int originY;
+
+  public void reset(final int x, final int y) {
+    if (this.epoch >= Integer.MAX_VALUE - 2) {
+      Arrays.fill(this.claims, 0);
+      Arrays.fill(this.stamps, 0);
+      this.epoch = 0;
+    }
+    // each search reserves one stamp per side so bidirectional searches can tell their cells apart
+    this.epoch += 2;
+    this.originX = x - RADIUS;
+    this.originY = y - RADIUS;
+  }
+
+  // The slot holding this cell, claiming a new one the first time a search asks, or -1 if outside of the window.
+  public int indexOf(final int x, final int y) {
+    final int cX = (x - this.originX) >> 1;
+    final int cY = (y - this.originY) >> 1;
+    if (cX < 0 || cX >= SIDE || cY < 0 || cY >= SIDE) {
+      return -1;
+    }
+    final int cell = cX * SIDE + cY;
+    int i = (cell * 0x9E3779B9) >>> HASH_SHIFT;
+    while (this.claims[i] == this.epoch) {
+      if (this.cells[i] == cell) {
+        return i;
+      }
+      i = (i + 1) & MASK;
+    }
+    this.claims[i] = this.epoch;
+    this.cells[i] = cell;
+    this.stamps[i] = 0;
+    return i;
+  }
+
+  public int x(final int i) {
+    return this.originX + (this.cells[i] / SIDE) * Road.STEP;
+  }
+
+  public int y(final int i) {
+    return this.originY + (this.cells[i] % SIDE) * Road.STEP;
+  }
+
+  public int getSide(final int i) {
+    final int s = Math.abs(this.stamps[i]) - this.epoch;
+    return s == 0 || s == 1 ? s : -1;
+  }
+
+  public boolean isSeen(final int i, final int side) {
+    return Math.abs(this.stamps[i]) == this.epoch + side;
+  }
+
+  public boolean isClosed(final int i, final int side) {
+    return this.stamps[i] == -(this.epoch + side);
+  }
+
+  public void visit(final int i, final int side, final int parent, final float f, final float g, final float n) {
+    this.stamps[i] = this.epoch + side;
+    this.parents[i] = parent;
+    this.fs[i] = f;
+    this.gs[i] = g;
+    this.ns[i] = n;
+  }
+
+  public void close(final int i, final int side) {
+    this.stamps[i] = -(this.epoch + side);
+  }
+
+  public int getParent(final int i) {
+    return this.parents[i];
+  }
+
+  public void setParent(final int i, final int parent) {
+    this.parents[i] = parent;
+  }
+
+  public float getF(final int i) {
+    return this.fs[i];
+  }
+
+  public float getG(final int i) {
+    return this.gs[i];
+  }
+
+  public float getN(final int i) {
+    return this.ns[i];
+  }
+}
@@ -0,0 +1,6 @@
+package personthecat.roadmap.gen.road;
+
+@FunctionalInterface
+public interface SearchListener {
+  void onSearchCompleted(final SearchStats stats);
+}
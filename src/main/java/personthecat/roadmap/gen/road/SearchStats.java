@@ -0,0 +1,141 @@
+package personthecat.roadmap.gen.road;
+
+public class SearchStats {
+  private int searches;
+  private int found;
+  private int partial;
+  private int exhausted;
+  private int unreachable;
+  private long expansions;
+  private long reopens;
+  private int peakOpen;
+  private long samples;
+  private long sdLookups;
+  private long nanos;
+  private int trials;
+  private int retraces;
+
+  public synchronized void add(final SearchStats s) {
+    this.searches += s.searches;
+    this.found += s.found;
+    this.partial += s.partial;
+    this.exhausted += s.exhausted;
+    this.unreachable += s.unreachable;
+    this.expansions += s.expansions;
+    this.reopens += s.reopens;
+    this.peakOpen = Math.max(this.peakOpen, s.peakOpen);
+    this.samples += s.samples;
+    this.sdLookups += s.sdLookups;
+    this.nanos += s.nanos;
+    this.trials += s.trials;
+    this.retraces += s.retraces;
+  }
+
+  public synchronized void reset() {
+    this.searches = 0;
+    this.found = 0;
+    this.partial = 0;
+    this.exhausted = 0;
+    this.unreachable = 0;
+    this.expansions = 0;
+    this.reopens = 0;
+    this.peakOpen = 0;
+    this.samples = 0;
+    this.sdLookups = 0;
+    this.nanos = 0;
+    this.trials = 0;
+    this.retraces = 0;
+  }
+
+  void set(Outcome outcome, int expansions, int reopens, int peakOpen, int samples, int sdLookups, long nanos) {
+    this.reset();
+    this.searches = 1;
+    switch (outcome) {
+      case FOUND -> this.found = 1;
+      case PARTIAL -> this.partial = 1;
+      case EXHAUSTED -> this.exhausted = 1;
+      case NO_PATH -> this.unreachable = 1;
+    }
+    this.expansions = expansions;
+    this.reopens = reopens;
+    this.peakOpen = peakOpen;
+    this.samples = samples;
+    this.sdLookups = sdLookups;
+    this.nanos = nanos;
+  }
+
+  // a branch traced ahead of time, which is traced again if a branch committed before it changed the answer
+  synchronized void addTrial(final boolean committed) {
+    this.trials++;
+    if (!committed) {
+      this.retraces++;
+    }
+  }
+
+  public int getSearches() {
+    return this.searches;
+  }
+
+  public int getFound() {
+    return this.found;
+  }
+
+  public int getPartial() {
+    return this.partial;
+  }
+
+  public int getExhausted() {
+    return this.exhausted;
+  }
+
+  public int getUnreachable() {
+    return this.unreachable;
+  }
+
+  public long getExpansions() {
+    return this.expansions;
+  }
+
+  public long getReopens() {
+    return this.reopens;
+  }
+
+  public int getPeakOpen() {
+    return this.peakOpen;
+  }
+
+  public long getSamples() {
+    return this.samples;
+  }
+
+  public long getSdLookups() {
+    return this.sdLookups;
+  }
+
+  public long getNanos() {
+    return this.nanos;
+  }
+
+  public int getTrials() {
+    return this.trials;
+  }
+
+  public int getRetraces() {
+    return this.retraces;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+      "%s searches (%s found, %s partial, %s exhausted, %s no path), %s expansions, %s reopens, peak open %s, %s samples, %s sd lookups, %s trials (%s retraced), %.2fms",
+      this.searches, this.found, this.partial, this.exhausted, this.unreachable, this.expansions, this.reopens,
+      this.peakOpen, this.samples, this.sdLookups, this.trials, this.retraces, this.nanos / 1_000_000.0);
+  }
+
+  public enum Outcome {
+    FOUND,
+    PARTIAL,
+    EXHAUSTED,
+    NO_PATH
+  }
+}
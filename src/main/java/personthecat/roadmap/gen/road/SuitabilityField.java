@@ -0,0 +1,174 @@
+package personthecat.roadmap.gen.road;
+
+import personthecat.roadmap.Config;
+import personthecat.roadmap.data.Point;
+import personthecat.roadmap.data.SmoothnessGraph;
+import personthecat.roadmap.data.TerrainCache;
+import personthecat.roadmap.gen.HeightmapView;
+
+// How well suited each block is to be the end of a road, lower being better. Weights are kept on the lattice scanned
+// by getNearest(), in tiles of 8x8 points that are filled in the first time any generator scans over them. A scan
+// is aligned to the block it starts from, so each offset from the lattice gets its own set of tiles.
+public class SuitabilityField {
+  private static final int RADIUS = 32;
+  private static final int STEP = Road.STEP;
+  private static final int SIDE = RADIUS * 2 / STEP;
+  private static final int CENTER = SIDE / 2;
+  private static final int SHIFT = 3;
+  private static final int POINTS = 1 << SHIFT;
+  private static final int MASK = POINTS - 1;
+
+  private final Config config;
+  private final SmoothnessGraph smoothness;
+  private final TerrainCache<Tile> tiles;
+
+  public SuitabilityField(final Config config, final SmoothnessGraph smoothness) {
+    this.config = config;
+    this.smoothness = smoothness;
+    this.tiles = new TerrainCache<>(config.getSmoothnessCacheSize());
+  }
+
+  // The lowest weight within RADIUS of point, earliest by column and then row if tied, or null if there is none.
+  public Point getNearest(final HeightmapView gen, final Point point) {
+    // avoid oceans (in game, can check continental-ness)
+    if (gen.sample(point.x, point.y) < 0) {
+      return null;
+    }
+    final Scan s = new Scan(gen, point);
+    if (this.config.getSuitableWeight() > 0) {
+      this.scanOutward(s);
+    } else {
+      this.scanAll(s);
+    }
+    return s.getBest();
+  }
+
+  private void scanAll(final Scan s) {
+    for (int i = 0; i < SIDE; i++) {
+      double[] weights = null;
+      for (int j = 0; j < SIDE; j++) {
+        // columns only cross into a new tile every few rows
+        if (weights == null || ((s.v + j) & MASK) == 0) {
+          weights = this.getWeights(s, s.u + i, s.v + j);
+        }
+        s.offer(i, j, weights[indexOf(s.u + i, s.v + j)]);
+      }
+    }
+  }
+
+  // Checks one ring around the center at a time, stopping at the first one where anything is suitable enough.
+  private void scanOutward(final Scan s) {
+    final double threshold = this.config.getSuitableWeight();
+    for (int r = 0; r <= CENTER; r++) {
+      final int minI = Math.max(0, CENTER - r);
+      final int maxI = Math.min(SIDE - 1, CENTER + r);
+      for (int i = minI; i <= maxI; i++) {
+        final boolean edge = i == CENTER - r || i == CENTER + r;
+        final int minJ = Math.max(0, CENTER - r);
+        final int maxJ = Math.min(SIDE - 1, CENTER + r);
+        // between the first and last columns, only the top and bottom of the ring are new
+        for (int j = minJ; j <= maxJ; j += edge ? 1 : 2 * r) {
+          s.offer(i, j, this.getWeights(s, s.u + i, s.v + j)[indexOf(s.u + i, s.v + j)]);
+        }
+      }
+      if (s.minWeight < threshold) {
+        return;
+      }
+    }
+  }
+
+  private double[] getWeights(final Scan s, final int u, final int v) {
+    final int tX = u >> SHIFT;
+    final int tY = v >> SHIFT;
+    final Tile tile = this.tiles.get(s.gen.getTerrainKey(), tX * STEP + s.pX, tY * STEP + s.pY, Tile::new);
+    double[] weights = tile.weights;
+    if (weights == null) {
+      synchronized (tile) {
+        weights = tile.weights;
+        if (weights == null) {
+          tile.weights = weights = this.compute(s.gen, toBlock(tX << SHIFT, s.pX), toBlock(tY << SHIFT, s.pY));
+        }
+      }
+    }
+    return weights;
+  }
+
+  private double[] compute(final HeightmapView gen, final int x, final int y) {
+    final float[] samples = new float[POINTS * POINTS];
+    gen.sampleCoarseRect(x, y, POINTS, POINTS, STEP, samples);
+    final double[] weights = new double[POINTS * POINTS];
+    for (int i = 0; i < POINTS; i++) {
+      for (int j = 0; j < POINTS; j++) {
+        final int o = i * POINTS + j;
+        weights[o] = this.getWeight(gen, x + i * STEP, y + j * STEP, samples[o]);
+      }
+    }
+    return weights;
+  }
+
+  private double getWeight(final HeightmapView gen, final int aX, final int aY, final float h) {
+    if (h < 0) {
+      return Double.MAX_VALUE;
+    }
+    final int maxCutoff = this.config.getMountainCutoff();
+    if (h > maxCutoff + 20) {
+      return Double.MAX_VALUE;
+    }
+    final int minCutoff = this.config.getShorelineCutoff();
+    double w = this.smoothness.getSd(gen, aX, aY) * 100.0;
+    if (h < minCutoff) {
+      w += (minCutoff - h) * (minCutoff - h);
+    } else if (h > maxCutoff) {
+      w += (h - maxCutoff) * (h - maxCutoff);
+    }
+    return w;
+  }
+
+  private static int indexOf(final int u, final int v) {
+    return (u & MASK) << SHIFT | (v & MASK);
+  }
+
+  private static int toBlock(final int u, final int p) {
+    return u * STEP + p;
+  }
+
+  private static class Tile {
+    volatile double[] weights;
+  }
+
+  private static class Scan {
+    final HeightmapView gen;
+    final int pX;
+    final int pY;
+    final int u;
+    final int v;
+    double minWeight = Double.MAX_VALUE;
+    int bestI = Integer.MAX_VALUE;
+    int bestJ = Integer.MAX_VALUE;
+
+    Scan(final HeightmapView gen, final Point point) {
+      this.gen = gen;
+      this.pX = Math.floorMod(point.x, STEP);
+      this.pY = Math.floorMod(point.y, STEP);
+      this.u = Math.floorDiv(point.x - RADIUS, STEP);
+      this.v = Math.floorDiv(point.y - RADIUS, STEP);
+    }
+
+    // ties go to the earlier point, so the order points are offered in never matters
+    void offer(final int i, final int j, final double weight) {
+      final boolean earlier = i < this.bestI || (i == this.bestI && j < this.bestJ);
+      if (weight < this.minWeight || (weight == this.minWeight && earlier)) {
+        this.minWeight = weight;
+        this.bestI = i;
+        this.bestJ = j;
+      }
+    }
+
+    Point getBest() {
+      if (this.minWeight == Double.MAX_VALUE) {
+        return null;
+      }
+      return new Point(toBlock(this.u + this.bestI, this.pX), toBlock(this.v + this.bestJ, this.pY));
+    }
+  }
+}
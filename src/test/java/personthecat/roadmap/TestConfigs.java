@@ -0,0 +1,27 @@
+package personthecat.roadmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Configs loaded from a scratch file, for tests that compare the output of two settings on the same fixed seed.
+public final class TestConfigs {
+  public static final int SEED = 1234;
+
+  private TestConfigs() {}
+
+  // settings are written as they would appear in config.xjs, e.g. "cacheTraversalCosts: false"
+  public static Config create(final Path dir, final String... settings) throws IOException {
+    final File file = dir.resolve("config.xjs").toFile();
+    final StringBuilder sb = new StringBuilder("{\n")
+        .append("  seed: ").append(SEED).append('\n')
+        .append("  persistRoads: false\n")
+        .append("  persistHeightmap: false\n");
+    for (final String s : settings) {
+      sb.append("  ").append(s).append('\n');
+    }
+    Files.writeString(file.toPath(), sb.append("}\n"));
+    return new Config(file);
+  }
+}
@@ -0,0 +1,111 @@
+package personthecat.roadmap.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BucketQueueTest {
+  private static final float WIDTH = 2;
+
+  @Test
+  void pollsInBucketOrder() {
+    final BucketQueue queue = new BucketQueue(16, WIDTH);
+    final Random rand = new Random(1234);
+    final float[] priorities = new float[1000];
+    for (int i = 0; i < priorities.length; i++) {
+      priorities[i] = rand.nextFloat() * 5000;
+      queue.offer(i, priorities[i]);
+    }
+    assertEquals(priorities.length, queue.size());
+    int last = -1;
+    while (!queue.isEmpty()) {
+      final int b = bucketOf(priorities[queue.poll()]);
+      assertTrue(b >= last);
+      last = b;
+    }
+  }
+
+  @Test
+  void reofferMovesIdToItsNewBucket() {
+    final BucketQueue queue = new BucketQueue(4, WIDTH);
+    queue.offer(0, 10);
+    queue.offer(1, 20);
+    queue.offer(2, 30);
+    assertEquals(0, queue.poll());
+    // lower than anything polled so far
+    queue.offer(2, 1);
+    queue.offer(1, 40);
+    assertEquals(2, queue.size());
+    assertEquals(2, queue.poll());
+    assertEquals(1, queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  void clampsPrioritiesOutsideOfTheBuckets() {
+    final BucketQueue queue = new BucketQueue(4, WIDTH);
+    queue.offer(0, Float.MAX_VALUE);
+    queue.offer(1, -5);
+    queue.offer(2, 1e9F);
+    assertEquals(1, queue.poll());
+    final int a = queue.poll();
+    final int b = queue.poll();
+    assertTrue((a == 0 && b == 2) || (a == 2 && b == 0));
+  }
+
+  @Test
+  void matchesReferenceUnderRandomOperations() {
+    final int ids = 500;
+    final BucketQueue queue = new BucketQueue(ids, WIDTH);
+    final float[] priorities = new float[ids];
+    final boolean[] queued = new boolean[ids];
+    final Random rand = new Random(42);
+    for (int n = 0; n < 20_000; n++) {
+      if (rand.nextInt(3) == 0 && !queue.isEmpty()) {
+        final int id = queue.poll();
+        assertTrue(queued[id]);
+        for (int i = 0; i < ids; i++) {
+          assertFalse(queued[i] && bucketOf(priorities[i]) < bucketOf(priorities[id]));
+        }
+        queued[id] = false;
+      } else {
+        final int id = rand.nextInt(ids);
+        priorities[id] = rand.nextInt(1000) / 10F;
+        queued[id] = true;
+        queue.offer(id, priorities[id]);
+      }
+    }
+    for (int i = 0; i < ids; i++) {
+      assertEquals(queued[i], queue.contains(i));
+    }
+  }
+
+  @Test
+  void clearReleasesEveryQueuedId() {
+    final BucketQueue queue = new BucketQueue(64, WIDTH);
+    for (int i = 0; i < 64; i++) {
+      queue.offer(i, 64 - i);
+    }
+    queue.poll();
+    queue.clear();
+    assertTrue(queue.isEmpty());
+    for (int i = 0; i < 64; i++) {
+      assertFalse(queue.contains(i));
+    }
+    // stale bucket heads would hand back ids from before the clear
+    queue.offer(5, 30);
+    queue.offer(6, 10);
+    assertEquals(2, queue.size());
+    assertEquals(6, queue.poll());
+    assertEquals(5, queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  private static int bucketOf(final float priority) {
+    return priority <= 0 ? 0 : (int) Math.min(priority / WIDTH, (1 << 16) - 1);
+  }
+}
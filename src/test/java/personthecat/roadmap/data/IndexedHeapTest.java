@@ -0,0 +1,104 @@
+package personthecat.roadmap.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexedHeapTest {
+
+  @Test
+  void pollsInPriorityOrder() {
+    // more ids than either array starts out with, so both have to grow
+    final IndexedHeap heap = new IndexedHeap(16);
+    final Random rand = new Random(1234);
+    final float[] priorities = new float[1000];
+    for (int i = 0; i < priorities.length; i++) {
+      priorities[i] = rand.nextFloat() * 100;
+      heap.offer(i, priorities[i]);
+    }
+    assertEquals(priorities.length, heap.size());
+    float last = Float.NEGATIVE_INFINITY;
+    while (!heap.isEmpty()) {
+      final int id = heap.poll();
+      assertTrue(priorities[id] >= last);
+      last = priorities[id];
+    }
+  }
+
+  @Test
+  void reofferMovesIdInsteadOfQueueingItTwice() {
+    final IndexedHeap heap = new IndexedHeap(8);
+    for (int i = 0; i < 8; i++) {
+      heap.offer(i, i);
+    }
+    heap.offer(7, -1); // decrease
+    heap.offer(0, 100); // increase
+    heap.offer(3, 3); // unchanged
+    assertEquals(8, heap.size());
+    assertEquals(7, heap.poll());
+    for (int i = 1; i < 7; i++) {
+      assertEquals(i, heap.poll());
+    }
+    assertEquals(0, heap.poll());
+    assertTrue(heap.isEmpty());
+  }
+
+  @Test
+  void matchesReferenceUnderRandomOperations() {
+    final int ids = 500;
+    final IndexedHeap heap = new IndexedHeap(ids);
+    final float[] priorities = new float[ids];
+    final boolean[] queued = new boolean[ids];
+    final Random rand = new Random(42);
+    for (int n = 0; n < 20_000; n++) {
+      if (rand.nextInt(3) == 0 && !heap.isEmpty()) {
+        final int id = heap.poll();
+        assertTrue(queued[id]);
+        for (int i = 0; i < ids; i++) {
+          assertFalse(queued[i] && priorities[i] < priorities[id]);
+        }
+        queued[id] = false;
+      } else {
+        final int id = rand.nextInt(ids);
+        priorities[id] = rand.nextInt(1000) / 10F;
+        queued[id] = true;
+        heap.offer(id, priorities[id]);
+      }
+      assertEquals(count(queued), heap.size());
+    }
+    for (int i = 0; i < ids; i++) {
+      assertEquals(queued[i], heap.contains(i));
+    }
+  }
+
+  @Test
+  void clearReleasesEveryQueuedId() {
+    final IndexedHeap heap = new IndexedHeap(64);
+    for (int i = 0; i < 64; i++) {
+      heap.offer(i, 64 - i);
+    }
+    heap.poll();
+    heap.clear();
+    assertTrue(heap.isEmpty());
+    for (int i = 0; i < 64; i++) {
+      assertFalse(heap.contains(i));
+    }
+    heap.offer(5, 1);
+    heap.offer(6, 0);
+    assertEquals(2, heap.size());
+    assertEquals(6, heap.poll());
+    assertEquals(5, heap.poll());
+  }
+
+  private static int count(final boolean[] flags) {
+    int n = 0;
+    for (final boolean b : flags) {
+      if (b) n++;
+    }
+    return n;
+  }
+}
@@ -0,0 +1,89 @@
+package personthecat.roadmap.data;
+
+import org.junit.jupiter.api.Test;
+import personthecat.roadmap.gen.HeightmapView;
+import personthecat.roadmap.gen.TestViews;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IntegralSmoothnessGraphTest {
+  private static final int MIN = -100;
+  private static final int SIZE = 300;
+
+  @Test
+  void matchesBruteForceOnTheLattice() {
+    for (final int r : new int[] { 1, 2, 4 }) {
+      final IntegralSmoothnessGraph graph = new IntegralSmoothnessGraph(4096, r);
+      final HeightmapView view = view(1);
+      for (int x = -64; x <= 128; x += 4) {
+        for (int y = -64; y <= 128; y += 4) {
+          assertEquals(bruteForceSd(x, y, r), graph.getSd(view, x, y), 1e-3, "radius " + r + " at " + x + ", " + y);
+        }
+      }
+    }
+  }
+
+  @Test
+  void tinyCacheChangesNothing() {
+    // a tile is evicted as soon as the next one is needed
+    final IntegralSmoothnessGraph graph = new IntegralSmoothnessGraph(1, 2);
+    final HeightmapView view = view(1);
+    for (int pass = 0; pass < 2; pass++) {
+      for (int x = -64; x <= 128; x += 12) {
+        for (int y = -64; y <= 128; y += 20) {
+          assertEquals(bruteForceSd(x, y, 2), graph.getSd(view, x, y), 1e-3, "at " + x + ", " + y);
+        }
+      }
+    }
+  }
+
+  @Test
+  void agreesAcrossTileEdges() {
+    final IntegralSmoothnessGraph graph = new IntegralSmoothnessGraph(4096, 2);
+    final HeightmapView view = view(1);
+    for (final int edge : new int[] { 0, 64 }) {
+      for (int y = -60; y < 120; y += 1) {
+        // the last blocks of a tile lean on its own copy of the next tile's first lattice point
+        final float inside = graph.getSd(view, edge - 4, y);
+        final float across = graph.getSd(view, edge, y);
+        assertEquals(inside + (across - inside) * 0.75F, graph.getSd(view, edge - 1, y), 1e-3);
+        final float inside2 = graph.getSd(view, y, edge - 4);
+        final float across2 = graph.getSd(view, y, edge);
+        assertEquals(inside2 + (across2 - inside2) * 0.75F, graph.getSd(view, y, edge - 1), 1e-3);
+      }
+    }
+  }
+
+  @Test
+  void keepsTerrainsApart() {
+    final IntegralSmoothnessGraph graph = new IntegralSmoothnessGraph(4096, 2);
+    final HeightmapView flat = TestViews.of(2, MIN, MIN, SIZE, SIZE, (x, y) -> 50);
+    assertEquals(bruteForceSd(8, 8, 2), graph.getSd(view(1), 8, 8), 1e-3);
+    assertEquals(0, graph.getSd(flat, 8, 8), 1e-3);
+    assertEquals(bruteForceSd(8, 8, 2), graph.getSd(view(1), 8, 8), 1e-3);
+  }
+
+  private static HeightmapView view(final int terrainKey) {
+    return TestViews.of(terrainKey, MIN, MIN, SIZE, SIZE, IntegralSmoothnessGraphTest::height);
+  }
+
+  private static int height(final int x, final int y) {
+    final int h = x * 73_856_093 ^ y * 19_349_663;
+    return 40 + Math.floorMod(h ^ h >>> 13, 41) + (x + y) / 16;
+  }
+
+  private static double bruteForceSd(final int x, final int y, final int r) {
+    double sum = 0;
+    double sq = 0;
+    for (int i = -r; i <= r; i++) {
+      for (int j = -r; j <= r; j++) {
+        final double h = height(x + i * 4, y + j * 4);
+        sum += h;
+        sq += h * h;
+      }
+    }
+    final double k = (r * 2 + 1) * (r * 2 + 1);
+    final double mean = sum / k;
+    return Math.sqrt(Math.max(0, sq / k - mean * mean));
+  }
+}
@@ -0,0 +1,70 @@
+package personthecat.roadmap.data;
+
+import org.junit.jupiter.api.Test;
+import personthecat.roadmap.gen.HeightmapView;
+import personthecat.roadmap.gen.TestViews;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatticeSmoothnessGraphTest {
+  private static final int MIN = -100;
+  private static final int SIZE = 300;
+  private static final int CHUNKS = 8;
+
+  @Test
+  void tinyCacheChangesNothing() {
+    final LatticeSmoothnessGraph large = new LatticeSmoothnessGraph(4096);
+    final LatticeSmoothnessGraph tiny = new LatticeSmoothnessGraph(1);
+    final HeightmapView view = view();
+    for (int pass = 0; pass < 2; pass++) {
+      for (int x = -64; x < 128; x += 3) {
+        for (int y = -64; y < 128; y += 5) {
+          assertEquals(large.getSd(view, x, y), tiny.getSd(view, x, y), "at " + x + ", " + y);
+        }
+      }
+    }
+  }
+
+  @Test
+  void keepsAsManyChunksAsItsCapacity() {
+    final HeightmapView view = view();
+    final CountingGraph large = new CountingGraph(4096);
+    final CountingGraph small = new CountingGraph(16);
+    for (int pass = 0; pass < 2; pass++) {
+      for (int cX = 0; cX < CHUNKS; cX++) {
+        for (int cY = 0; cY < CHUNKS; cY++) {
+          large.getSd(view, cX << 4, cY << 4);
+          small.getSd(view, cX << 4, cY << 4);
+        }
+      }
+    }
+    assertEquals(CHUNKS * CHUNKS, large.created.size());
+    // chunks dropped from the small cache are computed again on the second pass
+    assertTrue(small.created.size() > CHUNKS * CHUNKS, "nothing was evicted");
+  }
+
+  private static HeightmapView view() {
+    return TestViews.of(1, MIN, MIN, SIZE, SIZE, (x, y) -> 40 + Math.floorMod(x * 31 ^ y * 17, 23));
+  }
+
+  // every chunk of data handed out, so chunks computed again after being evicted are counted twice
+  private static class CountingGraph extends LatticeSmoothnessGraph {
+    final Set<Data> created = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    CountingGraph(final int capacity) {
+      super(capacity);
+    }
+
+    @Override
+    protected Data getData(final int terrainKey, final int cX, final int cY) {
+      final Data d = super.getData(terrainKey, cX, cY);
+      this.created.add(d);
+      return d;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package personthecat.roadmap.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedLruCacheTest {
+
+  @Test
+  void createsEachValueOnce() {
+    final StripedLruCache<Object> cache = new StripedLruCache<>(1024);
+    final AtomicInteger created = new AtomicInteger();
+    final Object a = cache.get(StripedLruCache.key(-5, 7), () -> counted(created));
+    final Object b = cache.get(StripedLruCache.key(7, -5), () -> counted(created));
+    assertNotSame(a, b);
+    assertSame(a, cache.get(StripedLruCache.key(-5, 7), () -> counted(created)));
+    assertSame(b, cache.get(StripedLruCache.key(7, -5), () -> counted(created)));
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  void keepsTagsOfTheSameKeyApart() {
+    final StripedLruCache<Object> cache = new StripedLruCache<>(1024);
+    final long key = StripedLruCache.key(100, 200);
+    final Object a = cache.get(1, key, Object::new);
+    final Object b = cache.get(2, key, Object::new);
+    assertNotSame(a, b);
+    assertSame(a, cache.get(1, key, Object::new));
+    assertSame(b, cache.get(2, key, Object::new));
+  }
+
+  @Test
+  void keepsRecentlyUsedValuesWhileFull() {
+    final StripedLruCache<Object> cache = new StripedLruCache<>(128);
+    final long hot = StripedLruCache.key(0, 0);
+    final long cold = StripedLruCache.key(0, 1);
+    final Object h = cache.get(hot, Object::new);
+    final Object c = cache.get(cold, Object::new);
+    final AtomicInteger created = new AtomicInteger();
+    for (int i = 2; i < 10_002; i++) {
+      cache.get(StripedLruCache.key(0, i), () -> counted(created));
+      assertSame(h, cache.get(hot, Object::new));
+    }
+    assertEquals(10_000, created.get());
+    assertNotSame(c, cache.get(cold, Object::new));
+  }
+
+  @Test
+  void staysWithinCapacity() {
+    final StripedLruCache<Object> cache = new StripedLruCache<>(128);
+    for (int i = 0; i < 1000; i++) {
+      cache.get(StripedLruCache.key(i, -i), Object::new);
+    }
+    // a miss may evict a value that has not been asked for yet, so hits can only undercount what was kept
+    final AtomicInteger created = new AtomicInteger();
+    for (int i = 0; i < 1000; i++) {
+      cache.get(StripedLruCache.key(i, -i), () -> counted(created));
+    }
+    assertTrue(1000 - created.get() <= 128);
+  }
+
+  @Test
+  void forgetsEverythingOnClear() {
+    final StripedLruCache<Object> cache = new StripedLruCache<>(1024);
+    final long key = StripedLruCache.key(3, 4);
+    final Object a = cache.get(key, Object::new);
+    final Object b = cache.get(9, key, Object::new);
+    cache.clear();
+    assertNotSame(a, cache.get(key, Object::new));
+    assertNotSame(b, cache.get(9, key, Object::new));
+  }
+
+  @Test
+  void sharesOneCacheBetweenTerrains() {
+    final TerrainCache<Object> cache = new TerrainCache<>(1024);
+    final Object a = cache.get(11, 64, -64, Object::new);
+    final Object b = cache.get(22, 64, -64, Object::new);
+    assertNotSame(a, b);
+    // switching back and forth does not flush either terrain
+    assertSame(a, cache.get(11, 64, -64, Object::new));
+    assertSame(b, cache.get(22, 64, -64, Object::new));
+  }
+
+  private static Object counted(final AtomicInteger created) {
+    created.incrementAndGet();
+    return new Object();
+  }
+}
@@ -0,0 +1,122 @@
+package personthecat.roadmap.gen;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import personthecat.roadmap.Config;
+import personthecat.roadmap.TestConfigs;
+import personthecat.roadmap.data.Tracker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+// Settings and code paths that only change how the map is filled must leave every block the same on a fixed seed.
+class HeightmapGeneratorTest {
+  private static final int W = 300;
+  private static final int H = 200;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void threadsChangeNothing() throws IOException {
+    for (final int lod : new int[] { 0, 2 }) {
+      // the fill is split along whichever side is longer
+      final float[] wide = snapshot(this.generator("mapThreadCount: 1").generate(H, W, true, lod));
+      assertArrayEquals(wide, snapshot(this.generator("mapThreadCount: 4").generate(H, W, true, lod)));
+      final float[] tall = snapshot(this.generator("mapThreadCount: 1").generate(W, H, true, lod));
+      assertArrayEquals(tall, snapshot(this.generator("mapThreadCount: 4").generate(W, H, true, lod)));
+    }
+  }
+
+  @Test
+  void panningWritesTheSameBlocksAsAFullFill() throws IOException {
+    for (final int lod : new int[] { 0, 2 }) {
+      final Config config = TestConfigs.create(this.dir);
+      final Tracker tracker = new Tracker(config);
+      final HeightmapGenerator panned = new HeightmapGenerator(config, tracker);
+      panned.generate(H, W, true, lod);
+      // each direction on its own, both at once, and a jump past the whole map
+      final int[][] moves = { { 2, 0 }, { 0, 1 }, { -5, 0 }, { 0, -3 }, { 3, 2 }, { -1, -4 }, { 20, 0 } };
+      for (final int[] m : moves) {
+        tracker.setXOffset(tracker.getXOffset() + m[0] * 32);
+        tracker.setYOffset(tracker.getYOffset() + m[1] * 32);
+        final float[] partial = snapshot(panned.generate(H, W, false, lod));
+        final Tracker moved = new Tracker(config);
+        moved.setXOffset(tracker.getXOffset());
+        moved.setYOffset(tracker.getYOffset());
+        final float[] full = snapshot(new HeightmapGenerator(config, moved).generate(H, W, true, lod));
+        assertArrayEquals(full, partial);
+      }
+    }
+  }
+
+  @Test
+  void rectanglesMatchSingleSamples() throws IOException {
+    for (final String coarseLod : new String[] { "coarseLod: 0", "coarseLod: 2" }) {
+      final HeightmapGenerator gen = this.generator(coarseLod);
+      // with no map, and then reading through one where it overlaps
+      assertRectsMatch(gen.getView());
+      gen.generate(H, W, true);
+      assertRectsMatch(gen.getView());
+    }
+  }
+
+  private static void assertRectsMatch(final HeightmapView view) {
+    final int w = 24;
+    final int h = 16;
+    final float[] rect = new float[w * h];
+    final float[] coarse = new float[w * h];
+    for (final int stride : new int[] { 1, 3, 4 }) {
+      for (int x = -150; x < W + 50; x += 61) {
+        for (int y = -100; y < H + 50; y += 47) {
+          view.sampleRect(x, y, w, h, stride, rect);
+          view.sampleCoarseRect(x, y, w, h, stride, coarse);
+          for (int i = 0; i < w; i++) {
+            for (int j = 0; j < h; j++) {
+              final int sX = x + i * stride;
+              final int sY = y + j * stride;
+              assertEquals(view.sample(sX, sY), rect[i * h + j], "at " + sX + ", " + sY);
+              assertEquals(view.sampleCoarse(sX, sY), coarse[i * h + j], "at " + sX + ", " + sY);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void keepsTheTerrainKeyUntilTheTerrainChanges() throws IOException {
+    final Config config = TestConfigs.create(this.dir);
+    final Tracker tracker = new Tracker(config);
+    final HeightmapGenerator gen = new HeightmapGenerator(config, tracker);
+    final int key = gen.getView().getTerrainKey();
+    gen.reload();
+    assertEquals(key, gen.getView().getTerrainKey());
+    tracker.setSeed(tracker.getSeed() + 1);
+    gen.reload();
+    final int reseeded = gen.getView().getTerrainKey();
+    assertNotEquals(key, reseeded);
+    gen.invalidate();
+    gen.reload();
+    assertNotEquals(reseeded, gen.getView().getTerrainKey());
+  }
+
+  private HeightmapGenerator generator(final String... settings) throws IOException {
+    final Config config = TestConfigs.create(this.dir, settings);
+    return new HeightmapGenerator(config, new Tracker(config));
+  }
+
+  private static float[] snapshot(final Heightmap map) {
+    final float[] blocks = new float[map.getWidth() * map.getHeight()];
+    for (int x = 0; x < map.getWidth(); x++) {
+      for (int y = 0; y < map.getHeight(); y++) {
+        blocks[x * map.getHeight() + y] = map.get(x, y);
+      }
+    }
+    return blocks;
+  }
+}
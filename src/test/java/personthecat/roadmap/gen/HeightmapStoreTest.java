@@ -0,0 +1,64 @@
+package personthecat.roadmap.gen;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import personthecat.fastnoise.data.NoiseDescriptor;
+
+import java.io.File;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeightmapStoreTest {
+  private static final String KEY = "test";
+
+  @TempDir
+  File root;
+
+  @Test
+  void readsBackWhatWasPut() {
+    final HeightmapStore store = new HeightmapStore(this.root, KEY);
+    // either side of page edges, and either side of zero
+    final int[] coords = { -513, -512, -511, -1, 0, 1, 511, 512, 1023 };
+    for (final int x : coords) {
+      for (final int y : coords) {
+        assertTrue(Float.isNaN(store.get(x, y)));
+        store.put(x, y, x * 0.5F - y);
+      }
+    }
+    for (final int x : coords) {
+      for (final int y : coords) {
+        assertEquals(x * 0.5F - y, store.get(x, y));
+      }
+    }
+    store.put(3, 3, 0);
+    assertEquals(0, store.get(3, 3));
+  }
+
+  @Test
+  void samplesTheSameTerrainWithOrWithoutAStore() {
+    final NoiseDescriptor noise = new NoiseDescriptor().seed(1234);
+    final HeightmapView plain = new HeightmapView(noise, null, null, null, 1, 1.5F, 0, 0);
+    // cold, and then warm from a later run reading the same pages back
+    for (int run = 0; run < 2; run++) {
+      final HeightmapStore store = new HeightmapStore(this.root, KEY);
+      final HeightmapView stored = new HeightmapView(noise, null, store, null, 1, 1.5F, 0, 0);
+      for (int x = -700; x < 700; x += 7) {
+        for (int y = -700; y < 700; y += 11) {
+          assertEquals(plain.sample(x, y), stored.sample(x, y));
+        }
+      }
+    }
+  }
+
+  @Test
+  void keepsOnlyTheLatestTerrains() {
+    for (int i = 0; i < 8; i++) {
+      new HeightmapStore(this.root, KEY + i).put(0, 0, i);
+    }
+    final File[] dirs = Objects.requireNonNull(this.root.listFiles(File::isDirectory));
+    assertEquals(4, dirs.length);
+    assertEquals(7, new HeightmapStore(this.root, KEY + 7).get(0, 0));
+  }
+}
@@ -0,0 +1,126 @@
+package personthecat.roadmap.gen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeightmapTest {
+  private static final int W = 37;
+  private static final int H = 23;
+  private static final int KEY = 12345;
+
+  @Test
+  void samplesEveryBlockInView() {
+    final Heightmap map = new Heightmap(W, H);
+    fill(map, -50, -9);
+    for (int x = -50; x < -50 + W; x++) {
+      for (int y = -9; y < -9 + H; y++) {
+        assertEquals(valueOf(x, y), map.sample(x, y, KEY));
+        assertEquals(valueOf(x, y), map.get(x + 50, y + 9));
+      }
+    }
+  }
+
+  @Test
+  void keepsBlocksInTheirSlotsWhilePanning() {
+    final Heightmap map = new Heightmap(W, H);
+    fill(map, 0, 0);
+    // only the exposed strips are written, as the renderer does
+    map.beginWrite();
+    for (int x = W; x < W + 5; x++) {
+      for (int y = -3; y < H - 3; y++) {
+        map.set(x, y, valueOf(x, y));
+      }
+    }
+    for (int x = 5; x < W; x++) {
+      for (int y = -3; y < 0; y++) {
+        map.set(x, y, valueOf(x, y));
+      }
+    }
+    map.endWrite(5, -3, 0, KEY);
+    for (int x = 5; x < 5 + W; x++) {
+      for (int y = -3; y < H - 3; y++) {
+        assertEquals(valueOf(x, y), map.sample(x, y, KEY));
+      }
+    }
+  }
+
+  @Test
+  void returnsNanOutsideOfTheView() {
+    final Heightmap map = new Heightmap(W, H);
+    fill(map, -50, -9);
+    assertNan(map.sample(-51, 0, KEY));
+    assertNan(map.sample(-50 + W, 0, KEY));
+    assertNan(map.sample(-50, -10, KEY));
+    assertNan(map.sample(-50, -9 + H, KEY));
+  }
+
+  @Test
+  void returnsNanForOtherTerrainApproximationsAndWrites() {
+    final Heightmap map = new Heightmap(W, H);
+    assertNan(map.sample(0, 0, KEY));
+    fill(map, 0, 0);
+    assertNan(map.sample(1, 1, KEY + 1));
+    map.beginWrite();
+    assertNan(map.sample(1, 1, KEY));
+    map.endWrite(0, 0, 2, KEY);
+    assertNan(map.sample(1, 1, KEY));
+  }
+
+  @Test
+  void readsTheSameBlocksAsSample() {
+    final Heightmap map = new Heightmap(W, H);
+    fill(map, -50, -9);
+    for (final int stride : new int[] { 1, 2, 3, 4, 7, 25 }) {
+      // rectangles hanging off of every side of the view and wrapping around the ring
+      for (int x = -80; x <= -50 + W; x += 9) {
+        for (int y = -30; y <= -9 + H; y += 7) {
+          final int w = 12;
+          final int h = 10;
+          final float[] out = new float[w * h];
+          Arrays.fill(out, -1);
+          map.read(x, y, w, h, stride, KEY, out);
+          for (int i = 0; i < w; i++) {
+            for (int j = 0; j < h; j++) {
+              final float n = map.sample(x + i * stride, y + j * stride, KEY);
+              assertEquals(Float.isNaN(n) ? -1 : n, out[i * h + j], "stride " + stride + " at " + i + ", " + j);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void readsNothingForOtherTerrain() {
+    final Heightmap map = new Heightmap(W, H);
+    fill(map, 0, 0);
+    final float[] out = new float[16];
+    Arrays.fill(out, -1);
+    map.read(0, 0, 4, 4, 1, KEY + 1, out);
+    for (final float n : out) {
+      assertEquals(-1, n);
+    }
+  }
+
+  private static void fill(final Heightmap map, final int xOffset, final int yOffset) {
+    map.beginWrite();
+    for (int x = xOffset; x < xOffset + W; x++) {
+      for (int y = yOffset; y < yOffset + H; y++) {
+        map.set(x, y, valueOf(x, y));
+      }
+    }
+    map.endWrite(xOffset, yOffset, 0, KEY);
+  }
+
+  private static float valueOf(final int x, final int y) {
+    return x * 1000 + y;
+  }
+
+  private static void assertNan(final float n) {
+    assertTrue(Float.isNaN(n), "expected NaN but was " + n);
+  }
+}
@@ -0,0 +1,75 @@
+package personthecat.roadmap.gen;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import personthecat.fastnoise.data.NoiseDescriptor;
+import personthecat.roadmap.Config;
+import personthecat.roadmap.TestConfigs;
+import personthecat.roadmap.data.Tracker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleCacheTest {
+  private static final int SIZE = 200;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void sharesOneTilePerChunk() {
+    final SampleCache cache = new SampleCache(64);
+    final float[] t = cache.getTile(0, 0);
+    assertSame(t, cache.getTile(15, 15));
+    assertNotSame(t, cache.getTile(16, 0));
+    assertNotSame(t, cache.getTile(0, -1));
+    assertTrue(Float.isNaN(t[SampleCache.indexOf(3, 4)]));
+  }
+
+  @Test
+  void readsEachBlockBackOnceSampled() {
+    final SampleCache cache = new SampleCache(64);
+    final HeightmapView view = new HeightmapView(new NoiseDescriptor(), cache, null, null, 1, 1, 0, 0);
+    final int c = SampleCache.indexOf(5, 7);
+    assertEquals(view.sample(5, 7), cache.getTile(5, 7)[c]);
+    // a block that is already cached is never evaluated again
+    cache.getTile(5, 7)[c] = -1;
+    assertEquals(-1, view.sample(5, 7));
+    final float[] out = new float[1];
+    view.sampleRect(5, 7, 1, 1, 1, out);
+    assertEquals(-1, out[0]);
+  }
+
+  @Test
+  void sampleCacheChangesNothing() throws IOException {
+    final float[] expected = this.sampleAll("sampleCacheSize: 0");
+    assertArrayEquals(expected, this.sampleAll("sampleCacheSize: 8192"));
+    // small enough that tiles are evicted while the area is still being sampled
+    assertArrayEquals(expected, this.sampleAll("sampleCacheSize: 16"));
+  }
+
+  // every block twice, the second pass reading back whatever the first one left in the cache
+  private float[] sampleAll(final String setting) throws IOException {
+    final Config config = TestConfigs.create(this.dir, setting);
+    final HeightmapView view = new HeightmapGenerator(config, new Tracker(config)).getView();
+    final float[] samples = new float[SIZE * SIZE];
+    for (int pass = 0; pass < 2; pass++) {
+      for (int x = 0; x < SIZE; x++) {
+        for (int y = 0; y < SIZE; y++) {
+          final float n = view.sample(x - SIZE / 2, y - SIZE / 2);
+          if (pass > 0) {
+            assertEquals(samples[x * SIZE + y], n);
+          }
+          samples[x * SIZE + y] = n;
+        }
+      }
+    }
+    return samples;
+  }
+}
@@ -0,0 +1,24 @@
+package personthecat.roadmap.gen;
+
+import personthecat.fastnoise.data.NoiseDescriptor;
+
+import java.util.function.IntBinaryOperator;
+
+// Views over hand-made terrain, for tests outside of this package that need exact heights.
+public final class TestViews {
+  private TestViews() {}
+
+  // A view reading from a map of w x h blocks at x, y. Samples outside of it fall back to the noise.
+  public static HeightmapView of(
+      final int terrainKey, final int x, final int y, final int w, final int h, final IntBinaryOperator heights) {
+    final Heightmap map = new Heightmap(w, h);
+    map.beginWrite();
+    for (int i = x; i < x + w; i++) {
+      for (int j = y; j < y + h; j++) {
+        map.set(i, j, heights.applyAsInt(i, j));
+      }
+    }
+    map.endWrite(x, y, 0, terrainKey);
+    return new HeightmapView(new NoiseDescriptor(), null, null, map, terrainKey, 1, 0, 0);
+  }
+}
@@ -0,0 +1,108 @@
+package personthecat.roadmap.gen.road;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import personthecat.roadmap.Config;
+import personthecat.roadmap.TestConfigs;
+import personthecat.roadmap.data.SmoothnessGraph;
+import personthecat.roadmap.data.Tracker;
+import personthecat.roadmap.gen.HeightmapGenerator;
+import personthecat.roadmap.gen.HeightmapView;
+import personthecat.roadmap.gen.TestViews;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CostFieldTest {
+  private static final int REGIONS = 2;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void looksEachCellUpOnce() throws IOException {
+    final CountingGraph graph = new CountingGraph();
+    final CostField field = new CostField(TestConfigs.create(this.dir), graph);
+    final HeightmapView view = view(1);
+    field.reset(view);
+    for (int pass = 0; pass < 3; pass++) {
+      for (int x = 0; x < 64; x += 2) {
+        final CostField.Tile t = field.getTile(x, 6);
+        assertEquals(view.sample(x, 6), field.getHeight(t, CostField.indexOf(x, 6), x, 6));
+        assertEquals(x, field.getSd(t, CostField.indexOf(x, 6), x, 6));
+      }
+    }
+    assertEquals(32, graph.lookups);
+  }
+
+  @Test
+  void keepsParitiesApart() throws IOException {
+    final CostField field = new CostField(TestConfigs.create(this.dir), new CountingGraph());
+    field.reset(view(1));
+    final CostField.Tile even = field.getTile(0, 0);
+    assertNotSame(even, field.getTile(1, 0));
+    assertNotSame(even, field.getTile(0, 1));
+    assertSame(even, field.getTile(2, 2));
+  }
+
+  @Test
+  void dropsTilesOfAnotherTerrain() throws IOException {
+    final CostField field = new CostField(TestConfigs.create(this.dir), new CountingGraph());
+    final HeightmapView view = view(1);
+    field.reset(view);
+    final CostField.Tile t = field.getTile(0, 0);
+    field.reset(view);
+    assertSame(t, field.getTile(0, 0));
+    field.reset(view(2));
+    assertNotSame(t, field.getTile(0, 0));
+  }
+
+  @Test
+  void staysWithinCapacity() throws IOException {
+    final CostField field = new CostField(TestConfigs.create(this.dir, "costCacheSize: 4"), new CountingGraph());
+    field.reset(view(1));
+    final CostField.Tile first = field.getTile(0, 0);
+    final CostField.Tile[] recent = new CostField.Tile[4];
+    for (int i = 1; i <= 4; i++) {
+      recent[i - 1] = field.getTile(i * 64, 0);
+    }
+    // the oldest tiles are dropped to make room, the newest are kept
+    assertNotSame(first, field.getTile(0, 0));
+    assertSame(recent[3], field.getTile(4 * 64, 0));
+  }
+
+  @Test
+  void cachedTraversalCostsChangeNothing() throws IOException {
+    final String expected = this.generate("cacheTraversalCosts: false");
+    assertEquals(expected, this.generate("cacheTraversalCosts: true"));
+  }
+
+  private String generate(final String setting) throws IOException {
+    final Config config = TestConfigs.create(this.dir, setting);
+    final Tracker tracker = new Tracker(config);
+    final HeightmapGenerator gen = new HeightmapGenerator(config, tracker);
+    return TestRoads.fingerprint(new RoadMap(config, tracker), gen.getView(), REGIONS);
+  }
+
+  private static HeightmapView view(final int terrainKey) {
+    return TestViews.of(terrainKey, -64, -64, 512, 128, (x, y) -> 60 + (x ^ y) % 7);
+  }
+
+  // answers with the x coordinate, so every cell can be told apart
+  private static class CountingGraph implements SmoothnessGraph {
+    int lookups;
+
+    @Override
+    public float getSd(final HeightmapView gen, final int x, final int y) {
+      this.lookups++;
+      return x;
+    }
+
+    @Override
+    public void clear() {}
+  }
+}
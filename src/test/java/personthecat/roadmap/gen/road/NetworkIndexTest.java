@@ -0,0 +1,136 @@
+package personthecat.roadmap.gen.road;
+
+import org.junit.jupiter.api.Test;
+import personthecat.roadmap.data.VertexGraph;
+import personthecat.roadmap.util.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NetworkIndexTest {
+  private static final int AREA = 4096;
+
+  @Test
+  void findsTheSameNetworksAsAScan() {
+    final Random rand = new Random(1234);
+    final List<RoadNetwork> networks = randomNetworks(rand, 200);
+    final NetworkIndex index = new NetworkIndex();
+    networks.forEach(index::add);
+    for (int n = 0; n < 5000; n++) {
+      final int x = rand.nextInt(AREA + 512) - AREA / 2 - 256;
+      final int y = rand.nextInt(AREA + 512) - AREA / 2 - 256;
+      assertEquals(containing(networks, x, y), containing(index.getNetworksAt(x, y), x, y));
+    }
+  }
+
+  @Test
+  void overlapsTheSameCirclesAsAScan() {
+    final Random rand = new Random(4321);
+    final List<RoadNetwork> networks = randomNetworks(rand, 100);
+    final NetworkIndex index = new NetworkIndex();
+    networks.forEach(index::add);
+    for (int n = 0; n < 5000; n++) {
+      final int x = rand.nextInt(AREA + 1024) - AREA / 2 - 512;
+      final int y = rand.nextInt(AREA + 1024) - AREA / 2 - 512;
+      final int r = rand.nextInt(400);
+      final double factor = rand.nextBoolean() ? 0.7 : 1.3;
+      assertEquals(scanOverlaps(networks, x, y, r, factor), index.overlapsCircle(x, y, r, factor));
+    }
+  }
+
+  @Test
+  void forgetsRemovedNetworks() {
+    final Random rand = new Random(99);
+    final List<RoadNetwork> networks = randomNetworks(rand, 200);
+    final NetworkIndex index = new NetworkIndex();
+    networks.forEach(index::add);
+    index.removeIf(n -> n.minX < 0);
+    networks.removeIf(n -> n.minX < 0);
+    for (int n = 0; n < 5000; n++) {
+      final int x = rand.nextInt(AREA) - AREA / 2;
+      final int y = rand.nextInt(AREA) - AREA / 2;
+      assertEquals(containing(networks, x, y), containing(index.getNetworksAt(x, y), x, y));
+      assertEquals(scanOverlaps(networks, x, y, 100, 0.7), index.overlapsCircle(x, y, 100, 0.7));
+    }
+  }
+
+  @Test
+  void copiesStayIndependent() {
+    final Random rand = new Random(7);
+    final List<RoadNetwork> networks = randomNetworks(rand, 100);
+    final NetworkIndex index = new NetworkIndex();
+    networks.forEach(index::add);
+    final NetworkIndex copy = new NetworkIndex();
+    copy.addAll(index);
+    final List<RoadNetwork> more = randomNetworks(rand, 50);
+    more.forEach(copy::add);
+    final List<RoadNetwork> all = new ArrayList<>(networks);
+    all.addAll(more);
+    for (int n = 0; n < 5000; n++) {
+      final int x = rand.nextInt(AREA) - AREA / 2;
+      final int y = rand.nextInt(AREA) - AREA / 2;
+      assertEquals(containing(networks, x, y), containing(index.getNetworksAt(x, y), x, y));
+      assertEquals(containing(all, x, y), containing(copy.getNetworksAt(x, y), x, y));
+    }
+  }
+
+  private static List<RoadNetwork> randomNetworks(final Random rand, final int count) {
+    final List<RoadNetwork> networks = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final List<Road> roads = new ArrayList<>();
+      roads.add(randomRoad(rand, rand.nextInt(AREA) - AREA / 2, rand.nextInt(AREA) - AREA / 2));
+      for (int b = rand.nextInt(3); b > 0; b--) {
+        final RoadVertex v = roads.get(0).vertices()[rand.nextInt(roads.get(0).vertices().length)];
+        roads.add(randomRoad(rand, v.x, v.y));
+      }
+      networks.add(new RoadNetwork(roads, new VertexGraph()));
+    }
+    return networks;
+  }
+
+  private static Road randomRoad(final Random rand, final int x, final int y) {
+    final double a = rand.nextDouble() * Math.PI * 2;
+    final int len = 10 + rand.nextInt(300);
+    final RoadVertex[] vertices = new RoadVertex[len];
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (int i = 0; i < len; i++) {
+      final int vX = x + (int) Math.round(Math.cos(a) * i * Road.STEP);
+      final int vY = y + (int) Math.round(Math.sin(a) * i * Road.STEP);
+      vertices[i] = new RoadVertex(vX, vY, (byte) 3, 0, 1, 0, 0, (short) 0);
+      minX = Math.min(minX, vX);
+      minY = Math.min(minY, vY);
+      maxX = Math.max(maxX, vX);
+      maxY = Math.max(maxY, vY);
+    }
+    return new Road((byte) 0, minX, minY, maxX, maxY, vertices);
+  }
+
+  // the index may list extra networks, but never miss or reorder one that contains the point
+  private static List<RoadNetwork> containing(final List<RoadNetwork> networks, final int x, final int y) {
+    final List<RoadNetwork> found = new ArrayList<>();
+    for (final RoadNetwork n : networks) {
+      if (n.containsPoint(x, y)) {
+        found.add(n);
+      }
+    }
+    return found;
+  }
+
+  private static boolean scanOverlaps(
+      final List<RoadNetwork> networks, final int x, final int y, final int r, final double factor) {
+    for (final RoadNetwork n : networks) {
+      final Road main = n.getMainRoad();
+      final RoadVertex c = main.vertices()[main.vertices().length / 2];
+      if (Utils.distance(x, y, c.x, c.y) <= (r + main.length() / 2) * factor) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
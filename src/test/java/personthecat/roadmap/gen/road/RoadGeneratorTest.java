@@ -0,0 +1,63 @@
+package personthecat.roadmap.gen.road;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import personthecat.roadmap.Config;
+import personthecat.roadmap.TestConfigs;
+import personthecat.roadmap.data.Tracker;
+import personthecat.roadmap.gen.HeightmapGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoadGeneratorTest {
+  private static final int REGIONS = 2;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void tracesQuadsInParallelWithoutChangingThem() throws IOException {
+    for (final String partial : new String[] { "generatePartial: true", "generatePartial: false" }) {
+      final String expected = this.generate(partial, "quadThreadCount: 1");
+      assertEquals(expected, this.generate(partial, "quadThreadCount: 4"));
+    }
+  }
+
+  @Test
+  void speculatesBranchesWithoutChangingThem() throws IOException {
+    // branches are speculated from inside the quads, which share the pool with them
+    for (final String partial : new String[] { "generatePartial: true", "generatePartial: false" }) {
+      final Config serial = this.config(partial, "speculativeBranches: false");
+      final RoadMap serialMap = new RoadMap(serial, new Tracker(serial));
+      final String expected = this.fingerprint(serial, serialMap);
+      assertEquals(0, serialMap.getSearchStats().getTrials());
+
+      final Config speculative = this.config(partial, "speculativeBranches: true");
+      final RoadMap speculativeMap = new RoadMap(speculative, new Tracker(speculative));
+      assertEquals(expected, this.fingerprint(speculative, speculativeMap));
+      assertTrue(speculativeMap.getSearchStats().getTrials() > 0, "no branches were speculated");
+    }
+  }
+
+  private String generate(final String... settings) throws IOException {
+    final Config config = TestConfigs.create(this.dir, settings);
+    return this.fingerprint(config, new RoadMap(config, new Tracker(config)));
+  }
+
+  private Config config(final String... settings) throws IOException {
+    final String[] all = new String[settings.length + 2];
+    all[0] = "quadThreadCount: 4";
+    all[1] = "logSearchStats: true";
+    System.arraycopy(settings, 0, all, 2, settings.length);
+    return TestConfigs.create(this.dir, all);
+  }
+
+  private String fingerprint(final Config config, final RoadMap map) {
+    final HeightmapGenerator gen = new HeightmapGenerator(config, new Tracker(config));
+    return TestRoads.fingerprint(map, gen.getView(), REGIONS);
+  }
+}
@@ -0,0 +1,116 @@
+package personthecat.roadmap.gen.road;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import personthecat.roadmap.Config;
+import personthecat.roadmap.TestConfigs;
+import personthecat.roadmap.data.IntegralSmoothnessGraph;
+import personthecat.roadmap.data.LatticeSmoothnessGraph;
+import personthecat.roadmap.data.SmoothnessGraph;
+import personthecat.roadmap.data.Tracker;
+import personthecat.roadmap.gen.HeightmapGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The map is built once, so the smoothness settings must be picked up again when the config is reloaded.
+class RoadMapTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void rebuildsTheSmoothnessGraphWhenItsSettingsChange() throws IOException {
+    final Config config = TestConfigs.create(this.dir, "smoothnessType: LATTICE");
+    final Tracker tracker = new Tracker(config);
+    final HeightmapGenerator gen = new HeightmapGenerator(config, tracker);
+    final RoadMap map = new RoadMap(config, tracker);
+    final SmoothnessGraph lattice = map.getSmoothness();
+    final SuitabilityField suitability = map.getSuitability();
+    assertInstanceOf(LatticeSmoothnessGraph.class, lattice);
+
+    this.reload(config, "smoothnessType: LATTICE");
+    map.getRegion(gen.getView(), (short) 0, (short) 0);
+    assertSame(lattice, map.getSmoothness());
+
+    this.reload(config, "smoothnessType: INTEGRAL", "smoothnessRadius: 2");
+    map.getRegion(gen.getView(), (short) 0, (short) 0);
+    final SmoothnessGraph integral = map.getSmoothness();
+    assertInstanceOf(IntegralSmoothnessGraph.class, integral);
+    assertSame(integral, map.newGenerator().graph);
+    assertNotSame(suitability, map.getSuitability());
+
+    this.reload(config, "smoothnessType: INTEGRAL", "smoothnessRadius: 4");
+    map.getRegion(gen.getView(), (short) 0, (short) 0);
+    assertNotSame(integral, map.getSmoothness());
+  }
+
+  @Test
+  void rebuildsTheSmoothnessCacheWhenItsSizeChanges() throws IOException {
+    final Config config = TestConfigs.create(this.dir, "smoothnessCacheSize: 16384");
+    final Tracker tracker = new Tracker(config);
+    final HeightmapGenerator gen = new HeightmapGenerator(config, tracker);
+    final RoadMap map = new RoadMap(config, tracker);
+    final SmoothnessGraph large = map.getSmoothness();
+
+    this.reload(config, "smoothnessCacheSize: 16");
+    // the roads stay, only the cache is replaced
+    assertFalse(config.terrainFeaturesUpdated());
+    assertFalse(config.roadFeaturesUpdated());
+    map.getRegion(gen.getView(), (short) 0, (short) 0);
+    assertNotSame(large, map.getSmoothness());
+  }
+
+  @Test
+  void keepsAReplacedPoolUntilItsCallersAreDone() throws Exception {
+    final Config config = TestConfigs.create(this.dir);
+    final RoadMap map = new RoadMap(config, new Tracker(config));
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch replaced = new CountDownLatch(1);
+    final AtomicBoolean shutDownEarly = new AtomicBoolean();
+    final Callable<ForkJoinPool> waiting = () -> {
+      started.countDown();
+      replaced.await();
+      shutDownEarly.set(ForkJoinTask.getPool().isShutdown());
+      return ForkJoinTask.getPool();
+    };
+    final Callable<ForkJoinPool> immediate = ForkJoinTask::getPool;
+    final ExecutorService caller = Executors.newSingleThreadExecutor();
+    try {
+      final Future<List<Future<ForkJoinPool>>> first = caller.submit(() -> map.invokeQuads(2, List.of(waiting)));
+      started.await();
+      final ForkJoinPool current = map.invokeQuads(3, List.of(immediate)).get(0).get();
+      replaced.countDown();
+      final ForkJoinPool old = first.get().get(0).get();
+
+      assertEquals(2, old.getParallelism());
+      assertEquals(3, current.getParallelism());
+      assertFalse(shutDownEarly.get(), "the pool was shut down while a caller was still in it");
+      assertTrue(old.isShutdown(), "the replaced pool was never shut down");
+      assertFalse(current.isShutdown());
+    } finally {
+      caller.shutdown();
+    }
+  }
+
+  private void reload(final Config config, final String... settings) throws IOException {
+    TestConfigs.create(this.dir, settings);
+    config.reloadFromDisk();
+  }
+}
@@ -0,0 +1,99 @@
+package personthecat.roadmap.gen.road;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchGridTest {
+  private static final int X = -1001;
+  private static final int Y = 777;
+
+  @Test
+  void findsTheSameSlotForTheSameCell() {
+    final SearchGrid grid = new SearchGrid();
+    grid.reset(X, Y);
+    final int i = grid.indexOf(X + 10, Y - 20);
+    assertTrue(i >= 0);
+    assertEquals(i, grid.indexOf(X + 10, Y - 20));
+    assertEquals(X + 10, grid.x(i));
+    assertEquals(Y - 20, grid.y(i));
+  }
+
+  @Test
+  void keepsEveryCellOfAFullSearchApart() {
+    final SearchGrid grid = new SearchGrid();
+    grid.reset(X, Y);
+    // a dense square right around the origin, as many cells as a search can ever touch
+    final int side = (int) Math.sqrt(SearchGrid.CAPACITY / 2.0);
+    final IntSet slots = new IntOpenHashSet();
+    for (int i = 0; i < side; i++) {
+      for (int j = 0; j < side; j++) {
+        final int x = X + (i - side / 2) * Road.STEP;
+        final int y = Y + (j - side / 2) * Road.STEP;
+        final int s = grid.indexOf(x, y);
+        assertTrue(slots.add(s));
+        grid.visit(s, 0, s, i, j, 0);
+      }
+    }
+    for (int i = 0; i < side; i++) {
+      for (int j = 0; j < side; j++) {
+        final int x = X + (i - side / 2) * Road.STEP;
+        final int y = Y + (j - side / 2) * Road.STEP;
+        final int s = grid.indexOf(x, y);
+        assertEquals(x, grid.x(s));
+        assertEquals(y, grid.y(s));
+        assertEquals(i, grid.getF(s));
+        assertEquals(j, grid.getG(s));
+      }
+    }
+    assertEquals(side * side, slots.size());
+  }
+
+  @Test
+  void blocksCellsOutsideOfTheWindow() {
+    final SearchGrid grid = new SearchGrid();
+    grid.reset(X, Y);
+    assertEquals(-1, grid.indexOf(X - SearchGrid.RADIUS - Road.STEP, Y));
+    assertEquals(-1, grid.indexOf(X, Y + SearchGrid.RADIUS));
+    assertTrue(grid.indexOf(X - SearchGrid.RADIUS, Y) >= 0);
+    assertTrue(grid.indexOf(X, Y + SearchGrid.RADIUS - Road.STEP) >= 0);
+  }
+
+  @Test
+  void tracksEachSideSeparately() {
+    final SearchGrid grid = new SearchGrid();
+    grid.reset(X, Y);
+    final int a = grid.indexOf(X, Y);
+    final int b = grid.indexOf(X + Road.STEP, Y);
+    assertEquals(-1, grid.getSide(a));
+    grid.visit(a, 0, a, 1, 1, 1);
+    grid.visit(b, 1, b, 1, 1, 1);
+    assertEquals(0, grid.getSide(a));
+    assertEquals(1, grid.getSide(b));
+    assertTrue(grid.isSeen(a, 0));
+    assertFalse(grid.isSeen(a, 1));
+    grid.close(a, 0);
+    assertTrue(grid.isClosed(a, 0));
+    assertFalse(grid.isClosed(a, 1));
+    assertEquals(0, grid.getSide(a));
+  }
+
+  @Test
+  void forgetsEverythingOnReset() {
+    final SearchGrid grid = new SearchGrid();
+    grid.reset(X, Y);
+    final int a = grid.indexOf(X, Y);
+    grid.visit(a, 0, a, 1, 1, 1);
+    grid.close(a, 0);
+    // the same search moved elsewhere, and then back
+    grid.reset(X + 100, Y);
+    grid.reset(X, Y);
+    final int b = grid.indexOf(X, Y);
+    assertEquals(-1, grid.getSide(b));
+    assertFalse(grid.isClosed(b, 0));
+  }
+}
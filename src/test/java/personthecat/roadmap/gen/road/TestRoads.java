@@ -0,0 +1,37 @@
+package personthecat.roadmap.gen.road;
+
+import personthecat.roadmap.gen.HeightmapView;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Fingerprints of generated roads, for tests that compare the output of two settings on the same fixed seed. Golden
+// values would depend on the noise library, so the configs are compared instead.
+final class TestRoads {
+  private TestRoads() {}
+
+  // every vertex of every road in the first regions x regions regions, in the order they were generated
+  static String fingerprint(final RoadMap map, final HeightmapView view, final int regions) {
+    int networks = 0;
+    int roads = 0;
+    int vertices = 0;
+    long hash = 0;
+    for (short x = 0; x < regions; x++) {
+      for (short y = 0; y < regions; y++) {
+        for (final RoadNetwork n : map.getRegion(view, x, y)) {
+          networks++;
+          for (final Road r : n) {
+            roads++;
+            for (final RoadVertex v : r.vertices()) {
+              vertices++;
+              hash = hash * 31 + v.x * 7919L + v.y;
+              hash = hash * 31 + v.radius + v.flags * 131L + Float.floatToIntBits(v.integrity);
+              hash = hash * 31 + Float.floatToIntBits(v.theta) * 31L + Float.floatToIntBits(v.xAngle);
+            }
+          }
+        }
+      }
+    }
+    assertTrue(vertices > 0, "nothing was generated");
+    return String.format("%s networks, %s roads, %s vertices, hash %x", networks, roads, vertices, hash);
+  }
+}